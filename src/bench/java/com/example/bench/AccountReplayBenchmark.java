@@ -0,0 +1,51 @@
+package com.example.bench;
+
+import com.example.account.application.Account;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AccountReplayBenchmark {
+
+    @Param({"100", "10000", "100000"})
+    public int events;
+
+    private List<Account.Event> journal;
+
+    @Setup
+    public void setup() {
+        journal = new ArrayList<>(events);
+        journal.add(new Account.Event.AccountCreated("account-1", 1_000));
+        var balance = 1_000;
+        // a movement every millisecond, so the longer journals span several dedup generations
+        var at = System.currentTimeMillis();
+        for (int i = 1; i < events; i++) {
+            var previous = balance;
+            if (i % 2 == 0) {
+                balance += 10;
+                journal.add(new Account.Event.FundsDeposited(balance, previous, "tx-" + i, at + i));
+            } else {
+                balance -= 10;
+                journal.add(new Account.Event.FundsWithdrawn(balance, previous, "tx-" + i, at + i));
+            }
+        }
+    }
+
+    @Benchmark
+    public Account.State replay() {
+        var state = Account.State.emptyState();
+        for (Account.Event event : journal) {
+            state = state.apply(event);
+        }
+        return state;
+    }
+
+}
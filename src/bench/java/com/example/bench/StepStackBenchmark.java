@@ -0,0 +1,55 @@
+package com.example.bench;
+
+import com.example.transaction.application.TransactionWorkflow.State;
+import com.example.transaction.application.TransactionWorkflow.State.StepId;
+import com.example.transaction.application.TransactionWorkflow.State.StepStack;
+import com.example.transaction.application.TransactionWorkflow.State.StepStatus;
+import com.example.transaction.domain.Transaction;
+import com.example.util.Tracing;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Builds a whole step history per operation, so the score divided by the number of steps is the
+ * cost of one push at that history length: 6 steps is a clean payment, 32 fills the stack and
+ * 100 is a retry-heavy workflow that keeps compacting.
+ */
+@org.openjdk.jmh.annotations.State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StepStackBenchmark {
+
+    @Param({"6", "32", "100"})
+    public int steps;
+
+    private State initial;
+
+    @Setup
+    public void setup() {
+        var request = new Transaction.Request("process", "a", "b", 10);
+        initial = State.from("tx-1", request, Tracing.TraceContext.NONE);
+    }
+
+    @Benchmark
+    public StepStack push() {
+        var stack = new StepStack();
+        for (int i = 0; i < steps; i++) {
+            stack = stack.push(StepId.TRANSACTION_CLEARING, StepStatus.REJECTED, i * 10, i * 10 + 5, 1);
+        }
+        return stack;
+    }
+
+    @Benchmark
+    public State logStep() {
+        var state = initial;
+        for (int i = 0; i < steps; i++) {
+            state = state.logStep(StepId.TRANSACTION_CLEARING, StepStatus.REJECTED, state.started(), 1);
+        }
+        return state;
+    }
+
+}
@@ -0,0 +1,52 @@
+package com.example.bench;
+
+import com.example.transaction.domain.Transaction;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TransactionJsonBenchmark {
+
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    private Transaction request;
+    private Transaction response;
+    private byte[] requestJson;
+    private byte[] responseJson;
+
+    @Setup
+    public void setup() throws Exception {
+        request = new Transaction.Request("process", "a", "b", 10);
+        response = new Transaction.Response.Received("tx-1", "VALIDATING_REQUEST", System.currentTimeMillis());
+        requestJson = mapper.writeValueAsBytes(request);
+        responseJson = mapper.writeValueAsBytes(response);
+    }
+
+    @Benchmark
+    public Transaction requestRoundTrip() throws Exception {
+        return mapper.readValue(mapper.writeValueAsBytes(request), Transaction.class);
+    }
+
+    @Benchmark
+    public Transaction requestRead() throws Exception {
+        return mapper.readValue(requestJson, Transaction.class);
+    }
+
+    @Benchmark
+    public Transaction responseRoundTrip() throws Exception {
+        return mapper.readValue(mapper.writeValueAsBytes(response), Transaction.class);
+    }
+
+    @Benchmark
+    public Transaction responseRead() throws Exception {
+        return mapper.readValue(responseJson, Transaction.class);
+    }
+
+}
@@ -0,0 +1,50 @@
+package com.example.bench;
+
+import com.example.transaction.application.TransactionLogger;
+import com.typesafe.config.ConfigFactory;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TransactionLoggerBenchmark {
+
+    @Param({"1", "16"})
+    private int batch;
+
+    private TransactionLogger.State state;
+    private long next;
+
+    // the logger as it runs: its dedup list already full of earlier txIds
+    @Setup
+    public void setup() {
+        var recent = ConfigFactory.load().getInt("payment.transaction-log.recent-tx-ids");
+        state = TransactionLogger.State.emptyState().record(entries(recent));
+    }
+
+    @Benchmark
+    public TransactionLogger.State record() {
+        return state.record(entries(batch));
+    }
+
+    @Benchmark
+    public TransactionLogger.State redelivered() {
+        return state.record(List.of(entry(0)));
+    }
+
+    private List<TransactionLogger.Log.Entry> entries(int count) {
+        return IntStream.range(0, count).mapToObj(__ -> entry(next++)).toList();
+    }
+
+    private static TransactionLogger.Log.Entry entry(long id) {
+        return new TransactionLogger.Log.Entry("tx-" + id, "process", "TRANSACTION_COMPLETED", 0L, id & 1023, id & 1023);
+    }
+
+}
@@ -0,0 +1,66 @@
+package com.example.bench;
+
+import com.example.util.Validator;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static com.example.util.Validator.entityExists;
+import static com.example.util.Validator.isTrue;
+import static com.example.util.Validator.verify;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ValidatorBenchmark {
+
+    @Param({"FAIL_FAST", "PASSIVE"})
+    public Validator.Mode mode;
+
+    @Param({"true", "false"})
+    public boolean failing;
+
+    private String txId;
+    private int amount;
+
+    @Setup
+    public void setup() {
+        txId = failing ? "" : "tx-1";
+        amount = failing ? 0 : 10;
+    }
+
+    @Benchmark
+    public Validator.Result handle() {
+        return Validator
+            .validate(
+                isTrue(txId.isEmpty(), "Transaction ID is Required"),
+                isTrue(amount <= 0, "Transaction amount must be greater than 0"),
+                isTrue("a".isEmpty(), "Source Account is Required"),
+                isTrue("b".isEmpty(), "Destination Account is Required")
+            )
+            .mode(mode)
+            .handle((result, err) -> result);
+    }
+
+    @Benchmark
+    public void handleAsync(Blackhole blackhole) {
+        var result = Validator
+            .validate(
+                isTrue(txId.isEmpty(), "Transaction ID is Required"),
+                isTrue(amount <= 0, "Transaction amount must be greater than 0")
+            )
+            .resolve(
+                entityExists(() -> CompletableFuture.completedFuture(amount), "Source Account Not Found"),
+                verify(() -> CompletableFuture.completedFuture(!failing), "Source Account Funds Not Available")
+            )
+            .mode(mode)
+            .handleAsync((r, err) -> r);
+        blackhole.consume(result.toCompletableFuture().join());
+    }
+
+}
@@ -0,0 +1,101 @@
+package com.example.account;
+
+import akka.javasdk.testkit.TestKitSupport;
+import com.example.account.application.Account;
+import org.junit.jupiter.api.Test;
+
+import java.util.UUID;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class AccountIntegrationTest extends TestKitSupport {
+
+    @Test
+    public void shouldApplyAReplayedWithdrawalOrDepositOnlyOnce() {
+        var accountId = randomId();
+        createAccount(accountId, 100);
+
+        var withdrawal = new Account.Command.Withdraw("tx-1", 10);
+        assertThat(withdraw(accountId, withdrawal)).isInstanceOf(Account.WithdrawResult.WithdrawSucceed.class);
+        assertThat(withdraw(accountId, withdrawal)).isInstanceOf(Account.WithdrawResult.WithdrawSucceed.class);
+        assertThat(getAccountBalance(accountId)).isEqualTo(90);
+
+        var deposit = new Account.Command.Deposit("tx-2", 5);
+        assertThat(deposit(accountId, deposit)).isInstanceOf(Account.DepositResult.DepositSucceed.class);
+        assertThat(deposit(accountId, deposit)).isInstanceOf(Account.DepositResult.DepositSucceed.class);
+        assertThat(getAccountBalance(accountId)).isEqualTo(95);
+
+        // a deposit reversing the withdrawal shares its txId, and is a movement of its own
+        assertThat(deposit(accountId, new Account.Command.Deposit("tx-1", 10))).isInstanceOf(Account.DepositResult.DepositSucceed.class);
+        assertThat(getAccountBalance(accountId)).isEqualTo(105);
+    }
+
+    @Test
+    public void shouldRecogniseAReplayBehindManyLaterMovements() {
+        var accountId = randomId();
+        createAccount(accountId, 0);
+
+        var first = new Account.Command.Deposit("tx-0", 1);
+        deposit(accountId, first);
+        IntStream.range(1, 2000).forEach(i -> deposit(accountId, new Account.Command.Deposit("tx-" + i, 1)));
+        assertThat(getAccountBalance(accountId)).isEqualTo(2000);
+
+        // far more movements than the account used to remember, but well within its dedup window
+        assertThat(deposit(accountId, first)).isInstanceOf(Account.DepositResult.DepositSucceed.class);
+        assertThat(getAccountBalance(accountId)).isEqualTo(2000);
+    }
+
+    @Test
+    public void shouldApplyEveryMovementWithoutATxId() {
+        var accountId = randomId();
+        createAccount(accountId, 100);
+
+        withdraw(accountId, new Account.Command.Withdraw(null, 10));
+        withdraw(accountId, new Account.Command.Withdraw(null, 10));
+
+        assertThat(getAccountBalance(accountId)).isEqualTo(80);
+    }
+
+    private String randomId() {
+        return UUID.randomUUID().toString().substring(0, 8);
+    }
+
+    private void createAccount(String accountId, int amount) {
+        String response = await(
+            componentClient
+                .forEventSourcedEntity(accountId)
+                .method(Account::create)
+                .invokeAsync(amount)
+        );
+        assertThat(response).contains("ok");
+    }
+
+    private Account.WithdrawResult withdraw(String accountId, Account.Command.Withdraw command) {
+        return await(
+            componentClient
+                .forEventSourcedEntity(accountId)
+                .method(Account::withdraw)
+                .invokeAsync(command)
+        );
+    }
+
+    private Account.DepositResult deposit(String accountId, Account.Command.Deposit command) {
+        return await(
+            componentClient
+                .forEventSourcedEntity(accountId)
+                .method(Account::deposit)
+                .invokeAsync(command)
+        );
+    }
+
+    private int getAccountBalance(String accountId) {
+        return await(
+            componentClient
+                .forEventSourcedEntity(accountId)
+                .method(Account::get)
+                .invokeAsync()
+        );
+    }
+
+}
@@ -0,0 +1,156 @@
+package com.example.payout;
+
+import akka.javasdk.testkit.TestKitSupport;
+import com.example.account.application.Account;
+import com.example.mock.FaultInjector;
+import com.example.payout.application.PayoutWorkflow;
+import com.example.payout.application.PayoutWorkflow.State;
+import com.example.payout.domain.Payout;
+import org.awaitility.Awaitility;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import static java.time.temporal.ChronoUnit.SECONDS;
+import static org.assertj.core.api.Assertions.assertThat;
+import static com.example.payout.application.PayoutWorkflow.State.CreditStatus.*;
+import static com.example.payout.application.PayoutWorkflow.State.Status.*;
+
+public class PayoutWorkflowIntegrationTest extends TestKitSupport {
+
+    private static final Logger log = LoggerFactory.getLogger(PayoutWorkflowIntegrationTest.class);
+
+    @AfterEach
+    public void resetFaults() {
+        await(FaultInjector.reset(componentClient, FaultInjector.Service.CLEARING));
+    }
+
+    @Test
+    public void shouldPayApprovedRecipientsAndLeaveOutRejectedOnes() {
+        var source = randomId();
+        var recipient1 = randomId();
+        var recipient2 = randomId();
+        var missing = randomId();
+
+        createAccount(source, 100);
+        createAccount(recipient1, 100);
+        createAccount(recipient2, 100);
+
+        var payoutId = randomId();
+        startPayout(payoutId, source, List.of(
+            new Payout.Recipient(recipient1, 5),
+            new Payout.Recipient(missing, 3),
+            new Payout.Recipient(recipient2, 7)
+        ));
+
+        Awaitility.await()
+            .atMost(10, TimeUnit.of(SECONDS))
+            .ignoreExceptions()
+            .untilAsserted(() -> {
+                State state = getPayout(payoutId);
+                log.info("Awaiting assertions: state={}", state);
+                assertThat(state.status()).isEqualTo(PAYOUT_COMPLETED);
+                assertThat(state.credits()).extracting(State.Credit::status).containsExactly(CLEARED, REJECTED, CLEARED);
+            });
+
+        assertThat(getAccountBalance(source)).isEqualTo(88);
+        assertThat(getAccountBalance(recipient1)).isEqualTo(105);
+        assertThat(getAccountBalance(recipient2)).isEqualTo(107);
+    }
+
+    @Test
+    public void shouldRefundCreditsNotAppliedWhenClearingFails() {
+        var source = randomId();
+        var recipient1 = randomId();
+        var recipient2 = randomId();
+        var missing = randomId();
+
+        createAccount(source, 100);
+        createAccount(recipient1, 100);
+        createAccount(recipient2, 100);
+
+        // every deposit fails with an error, so clearing exhausts its retries with the outcome of each credit unknown
+        await(FaultInjector.update(componentClient, FaultInjector.Service.CLEARING,
+            new FaultInjector.Profile(FaultInjector.Distribution.NONE, 0, 0, 0.5, 1.0, 0.0, 0)));
+
+        var payoutId = randomId();
+        startPayout(payoutId, source, List.of(
+            new Payout.Recipient(recipient1, 5),
+            new Payout.Recipient(missing, 3),
+            new Payout.Recipient(recipient2, 7)
+        ));
+
+        Awaitility.await()
+            .atMost(60, TimeUnit.of(SECONDS))
+            .ignoreExceptions()
+            .untilAsserted(() -> {
+                State state = getPayout(payoutId);
+                log.info("Awaiting assertions: state={}", state);
+                assertThat(state.status()).isEqualTo(PAYOUT_FAILED);
+                assertThat(state.credits()).extracting(State.Credit::status).containsExactly(REVERSED, REJECTED, REVERSED);
+            });
+
+        assertThat(getAccountBalance(source)).isEqualTo(100);
+        assertThat(getAccountBalance(recipient1)).isEqualTo(100);
+        assertThat(getAccountBalance(recipient2)).isEqualTo(100);
+
+        // the fenced credits are never applied, even when clearing recovers and a credit is retried
+        await(FaultInjector.reset(componentClient, FaultInjector.Service.CLEARING));
+        Account.DepositResult retried = await(
+            componentClient
+                .forEventSourcedEntity(recipient1)
+                .method(Account::deposit)
+                .invokeAsync(new Account.Command.Deposit(getPayout(payoutId).credits().get(0).txId(), 5))
+        );
+        assertThat(retried).isInstanceOf(Account.DepositResult.DepositSucceed.class);
+        assertThat(getAccountBalance(recipient1)).isEqualTo(100);
+    }
+
+    private void startPayout(String payoutId, String source, List<Payout.Recipient> recipients) {
+        Payout.Response response = await(
+            componentClient
+                .forWorkflow(payoutId)
+                .method(PayoutWorkflow::process)
+                .invokeAsync(new Payout.Request("payroll", source, recipients))
+        );
+        assertThat(response).isInstanceOf(Payout.Response.Received.class);
+    }
+
+    private String randomId() {
+        return UUID.randomUUID().toString().substring(0, 8);
+    }
+
+    private void createAccount(String accountId, int amount) {
+        String response = await(
+            componentClient
+                .forEventSourcedEntity(accountId)
+                .method(Account::create)
+                .invokeAsync(amount)
+        );
+        assertThat(response).contains("ok");
+    }
+
+    private int getAccountBalance(String accountId) {
+        return await(
+            componentClient
+                .forEventSourcedEntity(accountId)
+                .method(Account::get)
+                .invokeAsync()
+        );
+    }
+
+    private State getPayout(String payoutId) {
+        return await(
+            componentClient
+                .forWorkflow(payoutId)
+                .method(PayoutWorkflow::get)
+                .invokeAsync()
+        );
+    }
+
+}
@@ -0,0 +1,139 @@
+package com.example.transaction;
+
+import akka.javasdk.testkit.TestKitSupport;
+import com.example.transaction.LoadGenerator.Outcome;
+import com.example.transaction.LoadGenerator.Report;
+import com.example.transaction.LoadGenerator.Transfer;
+import com.example.transaction.application.TransactionWorkflow.State;
+import com.example.transaction.application.TransactionWorkflow.State.StepId;
+import com.example.transaction.application.TransactionWorkflow.State.StepStatus;
+import com.example.transaction.domain.Transaction;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import static com.example.transaction.application.TransactionWorkflow.State.Status.*;
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Drives transfers into and out of a small set of hot accounts at increasing concurrency, to
+ * show how throughput degrades as more workflows contend for the same Account entities. Each
+ * level is closed-loop: the next transfer starts as soon as one finishes.
+ *
+ * Afterwards the total balance across all accounts must be unchanged, and every transfer that
+ * was posted but not cleared must have been compensated. It is skipped unless -Dload=true is
+ * set, and writes its report to target/load/hot-accounts.json:
+ *
+ *   mvn verify -Pit -Dload=true -Dit.test=HotAccountContentionIntegrationTest -Dload.concurrency-levels=1,16,64,256
+ *
+ */
+@EnabledIfSystemProperty(named = "load", matches = "true")
+public class HotAccountContentionIntegrationTest extends TestKitSupport {
+
+    private static final int HOT_ACCOUNTS = Integer.getInteger("load.hot-accounts", 4);
+    private static final int COLD_ACCOUNTS = Integer.getInteger("load.cold-accounts", 200);
+    private static final int TRANSFERS_PER_LEVEL = Integer.getInteger("load.transfers-per-level", 1000);
+    private static final int[] CONCURRENCY_LEVELS = Arrays.stream(System.getProperty("load.concurrency-levels", "1,8,32,128").split(","))
+        .map(String::strip)
+        .mapToInt(Integer::parseInt)
+        .toArray();
+    private static final int HOT_BALANCE = 1_000_000;
+    private static final int COLD_BALANCE = 10_000;
+
+    public record Level(int concurrency, double throughputPerSecond, long p50, long p99, Report report) {}
+
+    public record ContentionReport(
+        int hotAccounts,
+        int coldAccounts,
+        List<Level> levels,
+        long balanceBefore,
+        long balanceAfter,
+        long clearingFailed,
+        long clearingFailedCompensated
+    ) {}
+
+    @Test
+    public void shouldConserveMoneyUnderHotAccountContention() throws Exception {
+        var settings = LoadGenerator.Settings.fromSystemProperties().withRate(Double.MAX_VALUE);
+        var setup = new LoadGenerator(componentClient, settings);
+        var random = ThreadLocalRandom.current();
+
+        var hot = IntStream.range(0, HOT_ACCOUNTS).mapToObj(i -> "hot-" + randomId()).toList();
+        var cold = IntStream.range(0, COLD_ACCOUNTS).mapToObj(i -> "cold-" + randomId()).toList();
+        var accounts = Stream.concat(hot.stream(), cold.stream()).toList();
+        setup.createAccounts(hot, HOT_BALANCE);
+        setup.createAccounts(cold, COLD_BALANCE);
+        var balanceBefore = (long) HOT_ACCOUNTS * HOT_BALANCE + (long) COLD_ACCOUNTS * COLD_BALANCE;
+
+        var levels = new ArrayList<Level>();
+        var outcomes = new ArrayList<Outcome>();
+        for (int concurrency : CONCURRENCY_LEVELS) {
+            var load = new LoadGenerator(componentClient, settings.withConcurrency(concurrency));
+            var transfers = new ArrayList<Transfer>(TRANSFERS_PER_LEVEL);
+            for (int i = 0; i < TRANSFERS_PER_LEVEL; i++) {
+                var hotAccount = hot.get(random.nextInt(HOT_ACCOUNTS));
+                var coldAccount = cold.get(random.nextInt(COLD_ACCOUNTS));
+                var inbound = random.nextBoolean();
+                transfers.add(new Transfer(randomId(), new Transaction.Request(
+                    "contention",
+                    inbound ? coldAccount : hotAccount,
+                    inbound ? hotAccount : coldAccount,
+                    1 + random.nextInt(10)
+                )));
+            }
+
+            var levelOutcomes = load.run(transfers);
+            outcomes.addAll(levelOutcomes);
+            var report = load.report("hot-accounts-c" + concurrency, Map.of(
+                "hotAccounts", HOT_ACCOUNTS,
+                "coldAccounts", COLD_ACCOUNTS
+            ), transfers, levelOutcomes);
+            load.write(report);
+            levels.add(new Level(concurrency, report.throughputPerSecond(), report.latency().p50(), report.latency().p99(), report));
+        }
+
+        var balanceAfter = setup.balances(accounts).stream().mapToLong(Integer::longValue).sum();
+        var clearingFailed = outcomes.stream().map(Outcome::state).filter(HotAccountContentionIntegrationTest::clearingFailed).toList();
+        var compensated = clearingFailed.stream().filter(state -> state.status() == COMPENSATION_COMPLETED).count();
+
+        setup.write("hot-accounts", new ContentionReport(
+            HOT_ACCOUNTS,
+            COLD_ACCOUNTS,
+            levels,
+            balanceBefore,
+            balanceAfter,
+            clearingFailed.size(),
+            compensated
+        ));
+
+        assertThat(outcomes).allMatch(Outcome::terminal, "every transfer reached a terminal status");
+        assertThat(balanceAfter).isEqualTo(balanceBefore);
+        assertThat(compensated).isEqualTo(clearingFailed.size());
+    }
+
+    /**
+     * A transfer went through CLEARING_FAILED if its funds were posted but it never completed,
+     * whether clearing was rejected or its retries were exhausted and it failed over.
+     */
+    private static boolean clearingFailed(State state) {
+        if (state == null || state.status() == TRANSACTION_COMPLETED) return false;
+        var history = state.history();
+        for (int i = 0; i < history.size(); i++) {
+            if (history.step(i) == StepId.POSTING_TRANSACTION && history.status(i) == StepStatus.APPROVED) return true;
+        }
+        return false;
+    }
+
+    private String randomId() {
+        return UUID.randomUUID().toString().substring(0, 8);
+    }
+
+}
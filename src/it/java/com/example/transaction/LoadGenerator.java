@@ -0,0 +1,265 @@
+package com.example.transaction;
+
+import akka.javasdk.client.ComponentClient;
+import com.example.account.application.Account;
+import com.example.transaction.application.TransactionWorkflow;
+import com.example.transaction.application.TransactionWorkflow.State;
+import com.example.transaction.domain.Transaction;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Function;
+
+public class LoadGenerator {
+
+    /**
+     * LoadGenerator drives transfers through {@link TransactionWorkflow} at a target rate, keeping
+     * at most a fixed number of workflows in flight, and polls each one until it reaches a
+     * terminal status.
+     *
+     * End-to-end latency is taken from the workflow's own start and end times, so it does not
+     * include time spent waiting for a concurrency permit; the report shows both the offered and
+     * the achieved start rate to make that queueing visible.
+     *
+     * Settings are read from system properties prefixed with "load.", so a scenario can be
+     * resized from the command line without changing the test.
+     *
+     */
+
+    private static final Logger log = LoggerFactory.getLogger(LoadGenerator.class);
+
+    private static final ObjectMapper mapper = new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT);
+
+    private final ComponentClient client;
+    private final Settings settings;
+    private final ScheduledExecutorService poller = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        var thread = new Thread(runnable, "load-poller");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public LoadGenerator(ComponentClient client, Settings settings) {
+        this.client = client;
+        this.settings = settings;
+    }
+
+    public record Settings(int concurrency, double rate, Duration pollInterval, Duration settleTimeout, Path reportDir) {
+
+        public static Settings fromSystemProperties() {
+            return new Settings(
+                Integer.getInteger("load.concurrency", 256),
+                Double.parseDouble(System.getProperty("load.rate", "200")),
+                Duration.ofMillis(Long.getLong("load.poll-interval", 50)),
+                Duration.ofSeconds(Long.getLong("load.settle-timeout", 120)),
+                Path.of(System.getProperty("load.report-dir", "target/load"))
+            );
+        }
+
+        public Settings withConcurrency(int concurrency) {
+            return new Settings(concurrency, rate, pollInterval, settleTimeout, reportDir);
+        }
+
+        public Settings withRate(double rate) {
+            return new Settings(concurrency, rate, pollInterval, settleTimeout, reportDir);
+        }
+
+    }
+
+    public record Transfer(String txId, Transaction.Request request) {}
+
+    public record Outcome(String txId, State state, String error) {
+
+        boolean terminal() {
+            return state != null && state.status().isTerminal();
+        }
+
+    }
+
+    public record Latency(long p50, long p90, long p99, long p999, long max, double mean) {
+
+        static Latency of(long[] samples) {
+            if (samples.length == 0) return new Latency(0, 0, 0, 0, 0, 0);
+            Arrays.sort(samples);
+            return new Latency(
+                percentile(samples, 0.50),
+                percentile(samples, 0.90),
+                percentile(samples, 0.99),
+                percentile(samples, 0.999),
+                samples[samples.length - 1],
+                Arrays.stream(samples).average().orElse(0)
+            );
+        }
+
+        private static long percentile(long[] sorted, double q) {
+            return sorted[Math.min(sorted.length - 1, (int) Math.ceil(q * sorted.length) - 1)];
+        }
+
+    }
+
+    public record Report(
+        String scenario,
+        Map<String, Object> parameters,
+        int transfers,
+        long elapsedMillis,
+        double offeredRate,
+        double achievedStartRate,
+        double throughputPerSecond,
+        Latency latency,
+        Map<State.Status, Long> statuses,
+        long compensated,
+        long errors,
+        long timedOut
+    ) {}
+
+    /**
+     * Runs each call with at most {@link Settings#concurrency()} of them outstanding, and waits
+     * for all of them to complete.
+     */
+    public <T, R> List<R> inParallel(List<T> items, Function<T, CompletionStage<R>> call) throws InterruptedException {
+        var permits = new Semaphore(settings.concurrency());
+        var futures = new CompletableFuture<?>[items.size()];
+        for (int i = 0; i < items.size(); i++) {
+            permits.acquire();
+            futures[i] = call.apply(items.get(i)).toCompletableFuture().whenComplete((__, ex) -> permits.release());
+        }
+        CompletableFuture.allOf(futures).join();
+        return Arrays.stream(futures).map(future -> (R) future.join()).toList();
+    }
+
+    public void createAccounts(List<String> accountIds, int balance) throws InterruptedException {
+        inParallel(accountIds, accountId -> client
+            .forEventSourcedEntity(accountId)
+            .method(Account::create)
+            .invokeAsync(balance));
+    }
+
+    public List<Integer> balances(List<String> accountIds) throws InterruptedException {
+        return inParallel(accountIds, accountId -> client
+            .forEventSourcedEntity(accountId)
+            .method(Account::get)
+            .invokeAsync());
+    }
+
+    public List<Outcome> run(List<Transfer> transfers) throws InterruptedException {
+        var permits = new Semaphore(settings.concurrency());
+        var done = new CountDownLatch(transfers.size());
+        var outcomes = new ConcurrentLinkedQueue<Outcome>();
+        var intervalNanos = (long) (TimeUnit.SECONDS.toNanos(1) / settings.rate());
+        var start = System.nanoTime();
+
+        for (int i = 0; i < transfers.size(); i++) {
+            var due = start + i * intervalNanos;
+            var wait = due - System.nanoTime();
+            if (wait > 0) LockSupport.parkNanos(wait);
+            permits.acquire();
+
+            var transfer = transfers.get(i);
+            var deadline = System.nanoTime() + settings.settleTimeout().toNanos();
+            client.forWorkflow(transfer.txId())
+                .method(TransactionWorkflow::process)
+                .invokeAsync(transfer.request())
+                .whenComplete((response, ex) -> {
+                    if (ex != null) {
+                        finish(new Outcome(transfer.txId(), null, ex.getMessage()), outcomes, permits, done);
+                    } else {
+                        schedulePoll(transfer.txId(), deadline, outcomes, permits, done);
+                    }
+                });
+        }
+        log.info("Started {} transfers in {} ms", transfers.size(), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+
+        if (!done.await(settings.settleTimeout().toMillis() + 10_000, TimeUnit.MILLISECONDS)) {
+            log.warn("{} transfers still outstanding after the settle timeout", done.getCount());
+        }
+        return List.copyOf(outcomes);
+    }
+
+    private void schedulePoll(String txId, long deadline, ConcurrentLinkedQueue<Outcome> outcomes, Semaphore permits, CountDownLatch done) {
+        poller.schedule(() -> client.forWorkflow(txId)
+            .method(TransactionWorkflow::get)
+            .invokeAsync()
+            .whenComplete((state, ex) -> {
+                if (state != null && state.status().isTerminal()) {
+                    finish(new Outcome(txId, state, null), outcomes, permits, done);
+                } else if (System.nanoTime() > deadline) {
+                    finish(new Outcome(txId, state, "timed out"), outcomes, permits, done);
+                } else {
+                    schedulePoll(txId, deadline, outcomes, permits, done);
+                }
+            }), settings.pollInterval().toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    private static void finish(Outcome outcome, ConcurrentLinkedQueue<Outcome> outcomes, Semaphore permits, CountDownLatch done) {
+        outcomes.add(outcome);
+        permits.release();
+        done.countDown();
+    }
+
+    public Report report(String scenario, Map<String, Object> parameters, List<Transfer> transfers, List<Outcome> outcomes) {
+        var terminal = outcomes.stream().filter(Outcome::terminal).map(Outcome::state).toList();
+        var statuses = new EnumMap<State.Status, Long>(State.Status.class);
+        for (State state : terminal) statuses.merge(state.status(), 1L, Long::sum);
+
+        var firstStarted = terminal.stream().mapToLong(State::started).min().orElse(0);
+        var lastStarted = terminal.stream().mapToLong(State::started).max().orElse(0);
+        var lastEnded = terminal.stream().map(State::ended).filter(Objects::nonNull).mapToLong(Long::longValue).max().orElse(0);
+        var elapsed = Math.max(1, lastEnded - firstStarted);
+        var latencies = terminal.stream().map(State::duration).filter(Objects::nonNull).mapToLong(Long::longValue).toArray();
+
+        var allParameters = new LinkedHashMap<String, Object>(parameters);
+        allParameters.put("concurrency", settings.concurrency());
+        allParameters.put("rate", settings.rate());
+
+        return new Report(
+            scenario,
+            allParameters,
+            transfers.size(),
+            elapsed,
+            settings.rate(),
+            terminal.size() * 1000.0 / Math.max(1, lastStarted - firstStarted),
+            terminal.size() * 1000.0 / elapsed,
+            Latency.of(latencies),
+            statuses,
+            statuses.getOrDefault(State.Status.COMPENSATION_COMPLETED, 0L),
+            outcomes.stream().filter(outcome -> outcome.state() == null).count(),
+            outcomes.stream().filter(outcome -> outcome.state() != null && !outcome.terminal()).count() + transfers.size() - outcomes.size()
+        );
+    }
+
+    public Path write(String name, Object report) throws IOException {
+        Files.createDirectories(settings.reportDir());
+        var file = settings.reportDir().resolve(name + ".json");
+        mapper.writeValue(file.toFile(), report);
+        return file;
+    }
+
+    public Path write(Report report) throws IOException {
+        var file = write(report.scenario(), report);
+        log.info("Load report for [{}]: {} transfers, {} /s, p50={} ms, p99={} ms, written to {}",
+            report.scenario(), report.transfers(), String.format("%.1f", report.throughputPerSecond()),
+            report.latency().p50(), report.latency().p99(), file);
+        return file;
+    }
+
+}
@@ -0,0 +1,176 @@
+package com.example.transaction;
+
+import akka.javasdk.testkit.TestKitSupport;
+import com.example.account.application.Account;
+import com.example.transaction.application.NettingWindow;
+import com.example.transaction.application.TransactionWorkflow;
+import com.example.transaction.application.TransactionWorkflow.State;
+import com.example.transaction.domain.Transaction;
+import org.awaitility.Awaitility;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import static java.time.temporal.ChronoUnit.SECONDS;
+import static org.assertj.core.api.Assertions.assertThat;
+import static com.example.transaction.application.TransactionWorkflow.State.Status.*;
+
+public class NettingIntegrationTest extends TestKitSupport {
+
+    private static final Logger log = LoggerFactory.getLogger(NettingIntegrationTest.class);
+
+    // listed under payment.netting.process-ids in the integration tests' application.conf
+    private static final String NETTED = "netting-it";
+
+    @Test
+    public void shouldSettleOpposingTransfersAsOneNetPosting() {
+        var accountId1 = randomId();
+        var accountId2 = randomId();
+
+        createAccount(accountId1, 100);
+        createAccount(accountId2, 100);
+
+        var txId1 = randomId();
+        var txId2 = randomId();
+        process(txId1, new Transaction.Request(NETTED, accountId1, accountId2, 30));
+        process(txId2, new Transaction.Request(NETTED, accountId2, accountId1, 10));
+
+        Awaitility.await()
+            .atMost(10, TimeUnit.of(SECONDS))
+            .ignoreExceptions()
+            .untilAsserted(() -> {
+                State state1 = getTransaction(txId1);
+                State state2 = getTransaction(txId2);
+                log.info("Awaiting assertions: state1={}, state2={}", state1.status(), state2.status());
+                assertThat(state1.status()).isEqualTo(TRANSACTION_COMPLETED);
+                assertThat(state2.status()).isEqualTo(TRANSACTION_COMPLETED);
+            });
+
+        assertThat(getAccountBalance(accountId1)).isEqualTo(80);
+        assertThat(getAccountBalance(accountId2)).isEqualTo(120);
+    }
+
+    @Test
+    public void shouldFailEveryTransferOfAWindowWhoseNetPostingIsRejected() {
+        var accountId1 = randomId();
+        var accountId2 = randomId();
+
+        createAccount(accountId1, 100);
+        createAccount(accountId2, 100);
+
+        // each transfer passes the liquidity check on its own, but together they exceed the balance
+        var txId1 = randomId();
+        var txId2 = randomId();
+        process(txId1, new Transaction.Request(NETTED, accountId1, accountId2, 80));
+        process(txId2, new Transaction.Request(NETTED, accountId1, accountId2, 60));
+
+        Awaitility.await()
+            .atMost(10, TimeUnit.of(SECONDS))
+            .ignoreExceptions()
+            .untilAsserted(() -> {
+                State state1 = getTransaction(txId1);
+                State state2 = getTransaction(txId2);
+                log.info("Awaiting assertions: state1={}, state2={}", state1.status(), state2.status());
+                assertThat(state1.status()).isEqualTo(POSTING_FAILED);
+                assertThat(state2.status()).isEqualTo(POSTING_FAILED);
+            });
+
+        assertThat(getAccountBalance(accountId1)).isEqualTo(100);
+        assertThat(getAccountBalance(accountId2)).isEqualTo(100);
+    }
+
+    @Test
+    public void shouldWithdrawATransferOnlyWhileItsWindowIsOpen() {
+        var pair = NettingWindow.pair(randomId(), randomId());
+        var txId = randomId();
+
+        NettingWindow.Added added = await(
+            componentClient
+                .forKeyValueEntity(pair)
+                .method(NettingWindow::add)
+                .invokeAsync(new NettingWindow.Entry(txId, "a", "b", 10))
+        );
+        assertThat(added.accepted()).isTrue();
+        assertThat(added.first()).isTrue();
+
+        assertThat(withdraw(pair, txId)).isEqualTo(NettingWindow.Withdrawal.WITHDRAWN);
+        assertThat(withdraw(pair, txId)).isEqualTo(NettingWindow.Withdrawal.ABSENT);
+
+        NettingWindow.Settlement settlement = await(
+            componentClient
+                .forKeyValueEntity(pair)
+                .method(NettingWindow::close)
+                .invokeAsync()
+        );
+        assertThat(settlement.entries()).isEmpty();
+
+        var settledTxId = randomId();
+        await(
+            componentClient
+                .forKeyValueEntity(pair)
+                .method(NettingWindow::add)
+                .invokeAsync(new NettingWindow.Entry(settledTxId, "a", "b", 10))
+        );
+        await(
+            componentClient
+                .forKeyValueEntity(pair)
+                .method(NettingWindow::close)
+                .invokeAsync()
+        );
+        assertThat(withdraw(pair, settledTxId)).isEqualTo(NettingWindow.Withdrawal.SETTLING);
+    }
+
+    private String randomId() {
+        return UUID.randomUUID().toString().substring(0, 8);
+    }
+
+    private void process(String txId, Transaction.Request request) {
+        await(
+            componentClient
+                .forWorkflow(txId)
+                .method(TransactionWorkflow::process)
+                .invokeAsync(request)
+        );
+    }
+
+    private NettingWindow.Withdrawal withdraw(String pair, String txId) {
+        return await(
+            componentClient
+                .forKeyValueEntity(pair)
+                .method(NettingWindow::withdraw)
+                .invokeAsync(txId)
+        );
+    }
+
+    private void createAccount(String accountId, int amount) {
+        String response = await(
+            componentClient
+                .forEventSourcedEntity(accountId)
+                .method(Account::create)
+                .invokeAsync(amount)
+        );
+        assertThat(response).contains("ok");
+    }
+
+    private int getAccountBalance(String accountId) {
+        return await(
+            componentClient
+                .forEventSourcedEntity(accountId)
+                .method(Account::get)
+                .invokeAsync()
+        );
+    }
+
+    private State getTransaction(String txId) {
+        return await(
+            componentClient
+                .forWorkflow(txId)
+                .method(TransactionWorkflow::get)
+                .invokeAsync()
+        );
+    }
+
+}
@@ -0,0 +1,124 @@
+package com.example.transaction;
+
+import akka.javasdk.testkit.TestKitSupport;
+import com.example.account.application.Account;
+import com.example.transaction.application.ScheduledPayment;
+import com.example.transaction.domain.Transaction;
+import org.awaitility.Awaitility;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+import static java.time.temporal.ChronoUnit.SECONDS;
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ScheduledPaymentIntegrationTest extends TestKitSupport {
+
+    private static final Logger log = LoggerFactory.getLogger(ScheduledPaymentIntegrationTest.class);
+
+    @Test
+    public void shouldStartScheduledPaymentOnlyOnceItIsDue() {
+        var accountId1 = randomId();
+        var accountId2 = randomId();
+
+        createAccount(accountId1, 100);
+        createAccount(accountId2, 100);
+
+        var txId = randomId();
+        var executeAt = System.currentTimeMillis() + 3000;
+        schedule(txId, new Transaction.Request("1", accountId1, accountId2, 10, null, null, executeAt));
+        // scheduling the same payment again is a duplicate
+        schedule(txId, new Transaction.Request("1", accountId1, accountId2, 10, null, null, executeAt));
+
+        assertThat(getScheduledPayment(txId).released()).isFalse();
+        assertThat(getAccountBalance(accountId1)).isEqualTo(100);
+
+        Awaitility.await()
+            .atMost(15, TimeUnit.of(SECONDS))
+            .ignoreExceptions()
+            .untilAsserted(() -> {
+                var balance1 = getAccountBalance(accountId1);
+                var balance2 = getAccountBalance(accountId2);
+                log.info("Awaiting assertions: balance1={}, balance2={}", balance1, balance2);
+                assertThat(getScheduledPayment(txId).released()).isTrue();
+                assertThat(balance1).isEqualTo(90);
+                assertThat(balance2).isEqualTo(110);
+            });
+
+        assertThat(System.currentTimeMillis()).isGreaterThanOrEqualTo(executeAt);
+    }
+
+    @Test
+    public void shouldReleaseMorePaymentsThanABatchInOrder() {
+        var accountId1 = randomId();
+        var accountId2 = randomId();
+
+        createAccount(accountId1, 1000);
+        createAccount(accountId2, 0);
+
+        // more than batch-size payments due together are released over several calls
+        var executeAt = System.currentTimeMillis() + 2000;
+        List<String> txIds = IntStream.range(0, 150).mapToObj(__ -> randomId()).toList();
+        txIds.forEach(txId -> schedule(txId, new Transaction.Request("1", accountId1, accountId2, 1, null, null, executeAt)));
+
+        Awaitility.await()
+            .atMost(30, TimeUnit.of(SECONDS))
+            .ignoreExceptions()
+            .untilAsserted(() -> {
+                var balance1 = getAccountBalance(accountId1);
+                log.info("Awaiting assertions: balance1={}", balance1);
+                assertThat(balance1).isEqualTo(850);
+                assertThat(getAccountBalance(accountId2)).isEqualTo(150);
+            });
+
+        assertThat(txIds).allSatisfy(txId -> assertThat(getScheduledPayment(txId).released()).isTrue());
+    }
+
+    private String randomId() {
+        return UUID.randomUUID().toString().substring(0, 8);
+    }
+
+    private void schedule(String txId, Transaction.Request request) {
+        String response = await(
+            componentClient
+                .forKeyValueEntity(txId)
+                .method(ScheduledPayment::schedule)
+                .invokeAsync(request)
+        );
+        assertThat(response).contains("ok");
+    }
+
+    private ScheduledPayment.State getScheduledPayment(String txId) {
+        return await(
+            componentClient
+                .forKeyValueEntity(txId)
+                .method(ScheduledPayment::get)
+                .invokeAsync()
+        );
+    }
+
+    private void createAccount(String accountId, int amount) {
+        String response = await(
+            componentClient
+                .forEventSourcedEntity(accountId)
+                .method(Account::create)
+                .invokeAsync(amount)
+        );
+        assertThat(response).contains("ok");
+    }
+
+    private int getAccountBalance(String accountId) {
+        return await(
+            componentClient
+                .forEventSourcedEntity(accountId)
+                .method(Account::get)
+                .invokeAsync()
+        );
+    }
+
+}
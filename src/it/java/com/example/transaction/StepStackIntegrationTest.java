@@ -0,0 +1,134 @@
+package com.example.transaction;
+
+import akka.javasdk.JsonSupport;
+import com.example.transaction.application.TransactionWorkflow.State;
+import com.example.transaction.application.TransactionWorkflow.State.StepId;
+import com.example.transaction.application.TransactionWorkflow.State.StepStack;
+import com.example.transaction.application.TransactionWorkflow.State.StepStatus;
+import com.example.transaction.application.TransactionWorkflow.State.StepTiming;
+import com.example.util.Tracing;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+import static com.example.transaction.application.TransactionWorkflow.State.Status.*;
+
+public class StepStackIntegrationTest {
+
+    @Test
+    public void shouldPackEntriesAndKeepStacksSharingTheirArraysApart() {
+        var base = new StepStack()
+            .push(StepId.VALIDATE_TRANSACTION, StepStatus.APPROVED, 0, 5, 1)
+            .push(StepId.SANCTION_CHECK, StepStatus.REJECTED, 7, 9, 200);
+
+        assertThat(base.size()).isEqualTo(2);
+        assertThat(base.step(1)).isEqualTo(StepId.SANCTION_CHECK);
+        assertThat(base.status(1)).isEqualTo(StepStatus.REJECTED);
+        assertThat(base.startedOffset(1)).isEqualTo(7);
+        assertThat(base.finishedOffset(1)).isEqualTo(9);
+        assertThat(base.attempts(1)).isEqualTo(Byte.MAX_VALUE);
+
+        // the first push takes the free slot after the tail, the second has to copy
+        var first = base.push(StepId.LIQUIDITY_CHECK, StepStatus.APPROVED, 10, 12, 1);
+        var second = base.push(StepId.COMPENSATE, StepStatus.HANDLING_FAILURE, 10, 20, 2);
+
+        assertThat(base.size()).isEqualTo(2);
+        assertThat(first.step(2)).isEqualTo(StepId.LIQUIDITY_CHECK);
+        assertThat(second.step(2)).isEqualTo(StepId.COMPENSATE);
+        assertThat(second.status(2)).isEqualTo(StepStatus.HANDLING_FAILURE);
+        assertThat(second.attempts(2)).isEqualTo(2);
+    }
+
+    @Test
+    public void shouldFoldTheOldestEntriesIntoTotalsThatStillAddUp() {
+        var stack = retried(40);
+
+        // compacted once the 33rd entry came in, keeping the newest 16 and adding the rest
+        assertThat(stack.size()).isEqualTo(24);
+        assertThat(stack.startedOffset(0)).isEqualTo(165);
+        assertThat(stack.foldedTimings())
+            .extracting(StepTiming::step, StepTiming::entries, StepTiming::attempts)
+            .containsExactly(
+                tuple(StepId.POSTING_TRANSACTION, 8, 16),
+                tuple(StepId.TRANSACTION_CLEARING, 8, 16));
+
+        var timing = completed(stack).timing();
+        var steps = timing.steps();
+        assertThat(steps).hasSize(26);
+        assertThat(steps.get(0).status()).isNull();
+        assertThat(steps.get(2).queued()).isEqualTo(5);
+        assertThat(steps.stream().mapToLong(step -> step.queued() + step.service()).sum()).isEqualTo(timing.duration());
+        assertThat(steps.stream().mapToInt(StepTiming::entries).sum()).isEqualTo(40);
+        assertThat(steps.stream().mapToInt(StepTiming::attempts).sum()).isEqualTo(80);
+    }
+
+    @Test
+    public void shouldRoundTripThroughJson() throws Exception {
+        var mapper = JsonSupport.getObjectMapper();
+        var stack = retried(40);
+
+        var json = mapper.writeValueAsString(stack);
+        assertThat(mapper.readTree(json).get("started")).hasSize(24);
+
+        var restored = mapper.readValue(json, StepStack.class);
+        assertThat(restored.entries(1000L)).isEqualTo(stack.entries(1000L));
+        assertThat(restored.foldedTimings()).isEqualTo(stack.foldedTimings());
+        assertThat(completed(restored).timing()).isEqualTo(completed(stack).timing());
+
+        var pushed = restored.push(StepId.COMPENSATE, StepStatus.APPROVED, 400, 410, 1);
+        assertThat(pushed.size()).isEqualTo(25);
+        assertThat(pushed.step(24)).isEqualTo(StepId.COMPENSATE);
+        assertThat(restored.size()).isEqualTo(24);
+
+        var state = mapper.readValue(mapper.writeValueAsString(completed(stack)), State.class);
+        assertThat(state.timing()).isEqualTo(completed(stack).timing());
+    }
+
+    @Test
+    public void shouldRestoreAStackPersistedWithOnlyFinishTimesAndOverflowCounts() throws Exception {
+        var mapper = JsonSupport.getObjectMapper();
+        var tree = (ObjectNode) mapper.valueToTree(new StepStack()
+            .push(StepId.VALIDATE_TRANSACTION, StepStatus.APPROVED, 0, 5, 1));
+        tree.remove("started");
+        tree.remove("attempts");
+        tree.putArray("overflow").add(0).add(0).add(0).add(3);
+
+        var restored = mapper.treeToValue(tree, StepStack.class);
+
+        assertThat(restored.size()).isEqualTo(1);
+        assertThat(restored.startedOffset(0)).isEqualTo(5);
+        assertThat(restored.attempts(0)).isEqualTo(1);
+        assertThat(restored.foldedTimings())
+            .extracting(StepTiming::step, StepTiming::entries)
+            .containsExactly(tuple(StepId.POSTING_TRANSACTION, 3));
+    }
+
+    /**
+     * A posting and clearing retried over and over, each entry queued 5ms and taking 5ms over two attempts.
+     */
+    private static StepStack retried(int entries) {
+        var stack = new StepStack();
+        for (int i = 0; i < entries; i++) {
+            var step = i % 2 == 0 ? StepId.POSTING_TRANSACTION : StepId.TRANSACTION_CLEARING;
+            stack = stack.push(step, StepStatus.REJECTED, i * 10 + 5, i * 10 + 10, 2);
+        }
+        return stack;
+    }
+
+    private static State completed(StepStack history) {
+        return new State(
+            "tx-1",
+            "1",
+            new State.Transaction("a", "b", 10),
+            TRANSACTION_COMPLETED,
+            1000L,
+            1000L + history.lastFinishedOffset(),
+            (long) history.lastFinishedOffset(),
+            history,
+            Tracing.TraceContext.NONE,
+            null
+        );
+    }
+
+}
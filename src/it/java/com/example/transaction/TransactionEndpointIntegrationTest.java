@@ -0,0 +1,133 @@
+package com.example.transaction;
+
+import akka.http.javadsl.model.StatusCodes;
+import akka.javasdk.testkit.TestKitSupport;
+import com.example.account.application.Account;
+import com.example.transaction.application.TransactionWorkflow;
+import com.example.transaction.domain.Transaction;
+import org.assertj.core.api.InstanceOfAssertFactories;
+import org.awaitility.Awaitility;
+import org.junit.jupiter.api.Test;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import static java.time.temporal.ChronoUnit.SECONDS;
+import static org.assertj.core.api.Assertions.assertThat;
+import static com.example.transaction.application.TransactionWorkflow.State.Status.*;
+
+public class TransactionEndpointIntegrationTest extends TestKitSupport {
+
+    @Test
+    public void shouldAnswerARetryAsADuplicateLabelledWithItsAcceptedStatus() {
+        var accountId1 = randomId();
+        var accountId2 = randomId();
+
+        createAccount(accountId1, 100);
+        createAccount(accountId2, 100);
+
+        var txId = randomId();
+        var payment = new Transaction.Request("1", accountId1, accountId2, 10);
+
+        var first = process(txId, payment);
+        assertThat(first).isInstanceOf(Transaction.Response.Received.class);
+
+        var retry = process(txId, payment);
+        assertThat(retry).asInstanceOf(InstanceOfAssertFactories.type(Transaction.Response.Processing.class))
+            .satisfies(processing -> {
+                assertThat(processing.status()).isEqualTo("VALIDATING_REQUEST");
+                assertThat(processing.message()).contains("Duplicate Request").contains("accepted in status VALIDATING_REQUEST");
+            });
+
+        Awaitility.await()
+            .atMost(10, TimeUnit.of(SECONDS))
+            .ignoreExceptions()
+            .untilAsserted(() -> assertThat(getTransaction(txId).status()).isEqualTo(TRANSACTION_COMPLETED));
+
+        // once the finished transaction has been read, a retry is answered with its terminal status
+        var read = await(httpClient.GET("/transaction/" + txId).invokeAsync());
+        assertThat(read.status()).isEqualTo(StatusCodes.OK);
+
+        var late = process(txId, payment);
+        assertThat(late).asInstanceOf(InstanceOfAssertFactories.type(Transaction.Response.Processing.class))
+            .satisfies(processing -> {
+                assertThat(processing.status()).isEqualTo("TRANSACTION_COMPLETED");
+                assertThat(processing.message()).contains("Duplicate Request: Transaction already handled.");
+            });
+
+        assertThat(getAccountBalance(accountId1)).isEqualTo(90);
+        assertThat(getAccountBalance(accountId2)).isEqualTo(110);
+    }
+
+    @Test
+    public void shouldRejectATxIdReusedWithADifferentPayload() {
+        var accountId1 = randomId();
+        var accountId2 = randomId();
+
+        createAccount(accountId1, 100);
+        createAccount(accountId2, 100);
+
+        var txId = randomId();
+        process(txId, new Transaction.Request("1", accountId1, accountId2, 10));
+
+        var conflict = await(
+            httpClient.POST("/transaction/" + txId + "/process")
+                .withRequestBody(new Transaction.Request("1", accountId1, accountId2, 20))
+                .invokeAsync()
+        );
+        assertThat(conflict.status()).isEqualTo(StatusCodes.CONFLICT);
+        assertThat(conflict.body().utf8String()).contains("different payload");
+
+        Awaitility.await()
+            .atMost(10, TimeUnit.of(SECONDS))
+            .ignoreExceptions()
+            .untilAsserted(() -> assertThat(getTransaction(txId).status()).isEqualTo(TRANSACTION_COMPLETED));
+
+        assertThat(getAccountBalance(accountId1)).isEqualTo(90);
+        assertThat(getAccountBalance(accountId2)).isEqualTo(110);
+    }
+
+    private String randomId() {
+        return UUID.randomUUID().toString().substring(0, 8);
+    }
+
+    private Transaction process(String txId, Transaction.Request request) {
+        var response = await(
+            httpClient.POST("/transaction/" + txId + "/process")
+                .withRequestBody(request)
+                .responseBodyAs(Transaction.class)
+                .invokeAsync()
+        );
+        assertThat(response.status()).isEqualTo(StatusCodes.OK);
+        return response.body();
+    }
+
+    private void createAccount(String accountId, int amount) {
+        String response = await(
+            componentClient
+                .forEventSourcedEntity(accountId)
+                .method(Account::create)
+                .invokeAsync(amount)
+        );
+        assertThat(response).contains("ok");
+    }
+
+    private int getAccountBalance(String accountId) {
+        return await(
+            componentClient
+                .forEventSourcedEntity(accountId)
+                .method(Account::get)
+                .invokeAsync()
+        );
+    }
+
+    private TransactionWorkflow.State getTransaction(String txId) {
+        return await(
+            componentClient
+                .forWorkflow(txId)
+                .method(TransactionWorkflow::get)
+                .invokeAsync()
+        );
+    }
+
+}
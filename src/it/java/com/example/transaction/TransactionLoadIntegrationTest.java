@@ -0,0 +1,71 @@
+package com.example.transaction;
+
+import akka.javasdk.testkit.TestKitSupport;
+import com.example.transaction.LoadGenerator.Outcome;
+import com.example.transaction.LoadGenerator.Transfer;
+import com.example.transaction.domain.Transaction;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Load test for the payment pipeline against the local TestKit runtime. It is skipped unless
+ * -Dload=true is set, and writes its report to target/load/transfer-load.json:
+ *
+ *   mvn verify -Pit -Dload=true -Dit.test=TransactionLoadIntegrationTest -Dload.transfers=10000 -Dload.rate=500
+ *
+ */
+@EnabledIfSystemProperty(named = "load", matches = "true")
+public class TransactionLoadIntegrationTest extends TestKitSupport {
+
+    private static final int ACCOUNTS = Integer.getInteger("load.accounts", 2000);
+    private static final int TRANSFERS = Integer.getInteger("load.transfers", 5000);
+    private static final int BALANCE = Integer.getInteger("load.balance", 1000);
+    private static final int MAX_AMOUNT = Integer.getInteger("load.max-amount", 10);
+
+    @Test
+    public void shouldSustainTransferLoad() throws Exception {
+        var load = new LoadGenerator(componentClient, LoadGenerator.Settings.fromSystemProperties());
+        var random = ThreadLocalRandom.current();
+
+        var accounts = IntStream.range(0, ACCOUNTS).mapToObj(i -> randomId()).toList();
+        load.createAccounts(accounts, BALANCE);
+
+        var transfers = new ArrayList<Transfer>(TRANSFERS);
+        for (int i = 0; i < TRANSFERS; i++) {
+            var from = random.nextInt(ACCOUNTS);
+            var to = (from + 1 + random.nextInt(ACCOUNTS - 1)) % ACCOUNTS;
+            transfers.add(new Transfer(randomId(), new Transaction.Request(
+                "load",
+                accounts.get(from),
+                accounts.get(to),
+                1 + random.nextInt(MAX_AMOUNT)
+            )));
+        }
+
+        List<Outcome> outcomes = load.run(transfers);
+
+        var report = load.report("transfer-load", Map.of(
+            "accounts", ACCOUNTS,
+            "balance", BALANCE,
+            "maxAmount", MAX_AMOUNT
+        ), transfers, outcomes);
+        load.write(report);
+
+        assertThat(report.timedOut()).isZero();
+        assertThat(report.errors()).isZero();
+    }
+
+    private String randomId() {
+        return UUID.randomUUID().toString().substring(0, 8);
+    }
+
+}
@@ -1,12 +1,14 @@
 package com.example.transaction;
 
 import akka.javasdk.testkit.TestKitSupport;
+import com.example.mock.FaultInjector;
 import com.example.transaction.application.TransactionWorkflow;
 import com.example.transaction.application.TransactionWorkflow.State;
 import com.example.account.application.Account;
 import com.example.transaction.domain.Transaction;
 import org.assertj.core.api.InstanceOfAssertFactories;
 import org.awaitility.Awaitility;
+import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.Test;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -22,6 +24,11 @@ public class TransactionWorkflowIntegrationTest extends TestKitSupport {
 
     private static final Logger log = LoggerFactory.getLogger(TransactionWorkflowIntegrationTest.class);
 
+    @AfterEach
+    public void resetFaults() {
+        await(FaultInjector.reset(componentClient, FaultInjector.Service.CLEARING));
+    }
+
     @Test
     public void shouldTransferMoney() {
         var accountId1 = randomId();
@@ -96,6 +103,39 @@ public class TransactionWorkflowIntegrationTest extends TestKitSupport {
             });
     }
 
+    @Test
+    public void shouldCompleteAClearingAppliedWhoseReplyWasLost() {
+        var accountId1 = randomId();
+        var accountId2 = randomId();
+
+        createAccount(accountId1, 100);
+        createAccount(accountId2, 100);
+
+        // every deposit is applied, then times out, so clearing exhausts its retries without an answer
+        await(FaultInjector.update(componentClient, FaultInjector.Service.CLEARING,
+            new FaultInjector.Profile(FaultInjector.Distribution.NONE, 0, 0, 0.5, 0.0, 0.0, 100, 1.0)));
+
+        var txId = randomId();
+        await(
+            componentClient
+                .forWorkflow(txId)
+                .method(TransactionWorkflow::process)
+                .invokeAsync(new Transaction.Request(accountId1, accountId2, "1", 10))
+        );
+
+        Awaitility.await()
+            .atMost(30, TimeUnit.of(SECONDS))
+            .ignoreExceptions()
+            .untilAsserted(() -> {
+                State state = getTransaction(txId);
+                log.info("Awaiting assertions: state={}", state);
+                assertThat(state.status()).isEqualTo(TRANSACTION_COMPLETED);
+            });
+
+        // the retried deposits were recognised as replays, and fencing found the first one applied
+        assertThat(getAccountBalance(accountId1)).isEqualTo(90);
+        assertThat(getAccountBalance(accountId2)).isEqualTo(110);
+    }
 
     private String randomId() {
         return UUID.randomUUID().toString().substring(0, 8);
@@ -0,0 +1,39 @@
+package com.example;
+
+import akka.javasdk.ServiceSetup;
+import akka.javasdk.annotations.Setup;
+import akka.javasdk.client.ComponentClient;
+import akka.javasdk.timer.TimerScheduler;
+import com.example.mock.FaultInjector;
+import com.example.transaction.application.ScheduledReleaser;
+import com.example.transaction.application.TransactionSweeper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+@Setup
+public class Bootstrap implements ServiceSetup {
+
+    private static final Logger log = LoggerFactory.getLogger(Bootstrap.class);
+
+    private final ComponentClient client;
+    private final TimerScheduler timers;
+
+    public Bootstrap(ComponentClient client, TimerScheduler timers) {
+        this.client = client;
+        this.timers = timers;
+    }
+
+    @Override
+    public void onStartup() {
+        TransactionSweeper.start(timers, client)
+            .whenComplete((__, error) -> {
+                if (error != null) log.error("Starting the transaction sweeper failed.", error);
+            });
+        ScheduledReleaser.start(timers, client)
+            .whenComplete((__, error) -> {
+                if (error != null) log.error("Starting the scheduled payment releaser failed.", error);
+            });
+        FaultInjector.start(client);
+    }
+
+}
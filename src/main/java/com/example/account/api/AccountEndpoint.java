@@ -1,14 +1,24 @@
 package com.example.account.api;
 
+import akka.http.javadsl.model.HttpResponse;
+import akka.http.javadsl.model.StatusCodes;
+import akka.http.javadsl.model.headers.ETag;
+import akka.http.javadsl.model.headers.EntityTag;
 import akka.javasdk.annotations.Acl;
 import akka.javasdk.annotations.http.Get;
 import akka.javasdk.annotations.http.HttpEndpoint;
 import akka.javasdk.annotations.http.Post;
 import akka.javasdk.client.ComponentClient;
+import akka.javasdk.http.HttpResponses;
+import akka.javasdk.http.RequestContext;
 import com.example.account.application.Account;
+import com.example.account.application.BalanceCache;
+import com.example.util.EdgeLimits;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionStage;
 
 @Acl(allow = @Acl.Matcher(principal = Acl.Principal.INTERNET))
@@ -18,24 +28,47 @@ public class AccountEndpoint {
     private static final Logger log = LoggerFactory.getLogger(AccountEndpoint.class);
 
     private final ComponentClient client;
+    private final RequestContext context;
 
-    public AccountEndpoint(ComponentClient client) {
+    public AccountEndpoint(ComponentClient client, RequestContext context) {
         this.client = client;
+        this.context = context;
     }
 
+    /**
+     * The balance carries its version as an ETag; a request whose If-None-Match matches it gets
+     * a 304 without a body. Recently read balances are served from the node's balance cache.
+     */
     @Get("/{id}")
-    public CompletionStage<Integer> get(String id) {
-        log.info("Get account with id [{}].", id);
+    public CompletionStage<HttpResponse> get(String id) {
+        log.debug("Get account with id [{}].", id);
+        var cached = BalanceCache.get(id);
+        if (cached.isPresent()) return CompletableFuture.completedFuture(conditional(cached.get()));
         return client
             .forEventSourcedEntity(id)
-            .method(Account::get)
+            .method(Account::balance)
             .invokeAsync()
-            .thenApply(balance -> balance);
+            .thenApply(balance -> {
+                BalanceCache.put(id, balance);
+                return conditional(balance);
+            });
+    }
+
+    private HttpResponse conditional(Account.Balance balance) {
+        var etag = ETag.create(EntityTag.create(Long.toString(balance.version()), false));
+        var unchanged = context.requestHeader("If-None-Match")
+            .map(header -> Arrays.stream(header.value().split(","))
+                .map(String::trim)
+                .anyMatch(tag -> tag.equals("*") || tag.equals(etag.value()) || tag.equals("W/" + etag.value())))
+            .orElse(false);
+        return unchanged
+            ? HttpResponse.create().withStatus(StatusCodes.NOT_MODIFIED).addHeader(etag)
+            : HttpResponses.ok(balance.balance()).addHeader(etag);
     }
 
     @Get("/{id}/verify/{amount}")
     public CompletionStage<Boolean> verify(String id, int amount) {
-        log.info("Verify account with id [{}].", id);
+        log.debug("Verify account with id [{}].", id);
         return client
             .forEventSourcedEntity(id)
             .method(Account::verifyFunds)
@@ -44,33 +77,39 @@ public class AccountEndpoint {
     }
 
     @Post("/{id}/create/{initBalance}")
-    public CompletionStage<String> create(String id, int initBalance) {
+    public CompletionStage<HttpResponse> create(String id, int initBalance) {
         log.info("Create account with id [{}].", id);
-        return client
+        return EdgeLimits.guard("account", context, null, () -> client
             .forEventSourcedEntity(id)
             .method(Account::create)
             .invokeAsync(initBalance)
-            .thenApply(response -> response);
+            .thenApply(HttpResponses::ok));
     }
 
     @Post("/{id}/deposit/{amount}")
-    public CompletionStage<Account.DepositResult> deposit(String id, int amount) {
+    public CompletionStage<HttpResponse> deposit(String id, int amount) {
         log.info("Deposit [{}] to account with id [{}].", amount, id);
-        return client
+        return EdgeLimits.guard("account", context, null, () -> client
             .forEventSourcedEntity(id)
             .method(Account::deposit)
-            .invokeAsync(amount)
-            .thenApply(response -> response);
+            .invokeAsync(new Account.Command.Deposit(null, amount))
+            .thenApply(result -> {
+                BalanceCache.invalidate(id);
+                return HttpResponses.ok(result);
+            }));
     }
 
     @Post("/{id}/withdraw/{amount}")
-    public CompletionStage<Account.WithdrawResult> withdraw(String id, int amount) {
+    public CompletionStage<HttpResponse> withdraw(String id, int amount) {
         log.info("Withdraw [{}] from account with id [{}].", amount, id);
-        return client
+        return EdgeLimits.guard("account", context, null, () -> client
             .forEventSourcedEntity(id)
             .method(Account::withdraw)
-            .invokeAsync(amount)
-            .thenApply(response -> response);
+            .invokeAsync(new Account.Command.Withdraw(null, amount))
+            .thenApply(result -> {
+                BalanceCache.invalidate(id);
+                return HttpResponses.ok(result);
+            }));
     }
 
 }
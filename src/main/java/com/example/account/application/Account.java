@@ -4,11 +4,19 @@ import akka.javasdk.annotations.ComponentId;
 import akka.javasdk.annotations.TypeName;
 import akka.javasdk.eventsourcedentity.EventSourcedEntity;
 import com.example.util.Validator;
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonProperty;
 import com.fasterxml.jackson.annotation.JsonSubTypes;
 import com.fasterxml.jackson.annotation.JsonTypeInfo;
+import com.typesafe.config.ConfigFactory;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
 import static com.example.util.Validator.*;
 
 @ComponentId("account")
@@ -32,25 +40,33 @@ public class Account extends EventSourcedEntity<Account.State, Account.Event> {
             });
     }
 
-    public Effect<DepositResult> deposit(int amount) {
+    public Effect<DepositResult> deposit(Command.Deposit command) {
         State current = currentState();
-        State updated = current.deposit(amount);
+        if (current.applied(Kind.DEPOSIT, command.txId())) {
+            log.debug("Duplicate deposit [{}] to account [{}], already applied.", command.txId(), commandContext().entityId());
+            return effects().reply(new DepositResult.DepositSucceed());
+        }
+        State updated = current.deposit(command.amount());
         return Validator
             .validate(
                 isTrue(current.isEmpty(), "Account [" + commandContext().entityId() + "] Doesn't Exist")
             )
             .handle((result, err) -> switch(result){
                 case SUCCESS -> effects()
-                    .persist(new Event.FundsDeposited(updated.balance, current.balance))
+                    .persist(new Event.FundsDeposited(updated.balance, current.balance, command.txId(), System.currentTimeMillis()))
                     .thenReply(__ -> new DepositResult.DepositSucceed());
                 case ERROR -> effects()
                     .reply(new DepositResult.DepositFailed(err));
             });
     }
 
-    public Effect<WithdrawResult> withdraw(int amount) {
+    public Effect<WithdrawResult> withdraw(Command.Withdraw command) {
         State current = currentState();
-        State updated = current.withdraw(amount);
+        if (current.applied(Kind.WITHDRAW, command.txId())) {
+            log.debug("Duplicate withdrawal [{}] from account [{}], already applied.", command.txId(), commandContext().entityId());
+            return effects().reply(new WithdrawResult.WithdrawSucceed());
+        }
+        State updated = current.withdraw(command.amount());
         return Validator
             .validate(
                 isTrue(current.isEmpty(), "Account [" + commandContext().entityId() + "] Doesn't Exist"),
@@ -59,42 +75,108 @@ public class Account extends EventSourcedEntity<Account.State, Account.Event> {
             .mode(Mode.FAIL_FAST)
             .handle((result, err) -> switch(result){
                 case SUCCESS -> effects()
-                    .persist(new Event.FundsWithdrawn(updated.balance, current.balance))
+                    .persist(new Event.FundsWithdrawn(updated.balance, current.balance, command.txId(), System.currentTimeMillis()))
                     .thenReply(__ -> new WithdrawResult.WithdrawSucceed());
                 case ERROR -> effects()
                     .reply(new WithdrawResult.WithdrawFailed(err));
             });
     }
 
+    /**
+     * Settles whether a withdrawal or deposit was applied, for a caller that has lost track of its
+     * outcome. A movement not applied yet is fenced, recorded as seen without moving any money, so
+     * that it is never applied should the original command still arrive. Replies true when the
+     * movement had been applied, and false when it had not and now never will be.
+     */
+    public Effect<Boolean> fence(Command.Fence command) {
+        State current = currentState();
+        if (current.applied(command.kind().fenced(), command.txId())) return effects().reply(false);
+        if (current.applied(command.kind(), command.txId())) return effects().reply(true);
+        // nothing can have been applied to an account that doesn't exist
+        if (current.isEmpty()) return effects().reply(false);
+        log.debug("Fencing [{}] [{}] on account [{}].", command.kind(), command.txId(), commandContext().entityId());
+        return effects()
+            .persist(new Event.MovementFenced(command.kind(), command.txId(), System.currentTimeMillis()))
+            .thenReply(__ -> false);
+    }
+
     public Effect<Integer> get(){
         if(currentState().isEmpty())
             return effects().error("Account Not Found");
         return effects().reply(currentState().balance);
     }
 
+    /**
+     * The balance with the entity's event sequence number as its version, which changes with
+     * every event and so identifies the balance for conditional reads.
+     */
+    public Effect<Balance> balance(){
+        if(currentState().isEmpty())
+            return effects().error("Account Not Found");
+        return effects().reply(new Balance(currentState().balance, commandContext().sequenceNumber()));
+    }
+
+    /**
+     * Unlike get, replies rather than failing when the account doesn't exist, so a missing account
+     * is not mistaken for a failing one by callers' retries and circuit breakers.
+     */
+    public Effect<Boolean> exists(){
+        return effects().reply(!currentState().isEmpty());
+    }
+
     public Effect<Boolean> verifyFunds(int amount){
         return effects().reply(currentState().balance >= amount);
     }
 
     @Override
     public State applyEvent(Event event) {
-        return switch(event) {
-            case Event.AccountCreated c -> new State(eventContext().entityId(), c.initBalance());
-            case Event.FundsDeposited d -> new State(eventContext().entityId(), d.newBalance());
-            case Event.FundsWithdrawn w -> new State(eventContext().entityId(), w.newBalance());
-        };
+        return currentState().apply(event);
+    }
+
+    /**
+     * Money movements carry the txId of the payment they belong to, so a retried command is
+     * recognised and answered with its original result instead of being applied twice. A null
+     * txId, as used by direct calls through the endpoint, is never deduplicated.
+     */
+    public sealed interface Command {
+        record Withdraw(String txId, int amount) implements Command {}
+        record Deposit(String txId, int amount) implements Command {}
+        record Fence(Kind kind, String txId) implements Command {}
     }
 
+    public record Balance(int balance, long version) {}
+
+    public enum Kind {
+        WITHDRAW,
+        DEPOSIT,
+        FENCED_WITHDRAW,
+        FENCED_DEPOSIT;
+
+        Kind fenced() {
+            return switch (this) {
+                case WITHDRAW, FENCED_WITHDRAW -> FENCED_WITHDRAW;
+                case DEPOSIT, FENCED_DEPOSIT -> FENCED_DEPOSIT;
+            };
+        }
+    }
+
+    /**
+     * Movements carry the time they were applied, which ages their txId out of the account's
+     * {@link State.RecentTxIds}; it is null in events persisted before it was kept.
+     */
     public sealed interface Event {
 
         @TypeName("account-created")
         record AccountCreated(String id, int initBalance) implements Event {}
 
         @TypeName("funds-deposited")
-        record FundsDeposited(int newBalance, int prevBalance) implements Event {}
+        record FundsDeposited(int newBalance, int prevBalance, String txId, Long at) implements Event {}
 
         @TypeName("funds-withdrawn")
-        record FundsWithdrawn(int newBalance, int prevBalance) implements Event {}
+        record FundsWithdrawn(int newBalance, int prevBalance, String txId, Long at) implements Event {}
+
+        @TypeName("movement-fenced")
+        record MovementFenced(Kind kind, String txId, Long at) implements Event {}
 
     }
 
@@ -118,24 +200,231 @@ public class Account extends EventSourcedEntity<Account.State, Account.Event> {
         record DepositSucceed() implements Account.DepositResult {}
     }
 
-    public record State(String id, int balance) {
+    public record State(String id, int balance, RecentTxIds recent) {
+
+        public State {
+            if (recent == null) recent = new RecentTxIds();
+        }
 
         public State withdraw(int amount) {
-            return new State(id, balance - amount);
+            return new State(id, balance - amount, recent);
         }
 
         public State deposit(int amount) {
-            return new State(id, balance + amount);
+            return new State(id, balance + amount, recent);
+        }
+
+        public boolean applied(Kind kind, String txId) {
+            return recent.contains(kind, txId);
+        }
+
+        public State apply(Event event) {
+            return switch(event) {
+                case Event.AccountCreated c -> new State(c.id(), c.initBalance(), recent);
+                case Event.FundsDeposited d -> new State(id, d.newBalance(), recent.record(Kind.DEPOSIT, d.txId(), d.at()));
+                case Event.FundsWithdrawn w -> new State(id, w.newBalance(), recent.record(Kind.WITHDRAW, w.txId(), w.at()));
+                case Event.MovementFenced f -> new State(id, balance, recent.record(f.kind(), f.txId(), f.at()).record(f.kind().fenced(), f.txId(), f.at()));
+            };
         }
 
         public static State emptyState() {
-            return new State("", 0);
+            return new State("", 0, new RecentTxIds());
         }
 
         public boolean isEmpty() {
             return id.isEmpty();
         }
 
+        /**
+         * The txIds of the withdrawals and deposits applied to the account within the last
+         * payment.account.dedup-window, kept as 64-bit fingerprints, so a replayed movement is
+         * recognised for as long as anything can still retry it, however busy the account.
+         *
+         * Fingerprints are grouped into generations of a quarter of the window each, by the time
+         * of the event that recorded them, and a generation is dropped once its latest movement
+         * is older than the window, so the set holds at most a window and a quarter of movements
+         * at 8 bytes each. Within a generation they are spread over 1024 small arrays by their low
+         * bits, reached through two levels of 32 references, so a lookup scans a handful of
+         * entries per generation rather than the whole set.
+         *
+         * The set is immutable: recording copies the two reference arrays on its path and the
+         * small array it adds to, so successive states share everything else.
+         */
+        @JsonIgnoreProperties(ignoreUnknown = true)
+        public static final class RecentTxIds {
+
+            static final long WINDOW_MILLIS = ConfigFactory.load().getDuration("payment.account.dedup-window").toMillis();
+            static final long GENERATION_MILLIS = Math.max(1, WINDOW_MILLIS / 4);
+
+            private static final Generation[] NONE = new Generation[0];
+
+            // oldest first
+            private final Generation[] generations;
+
+            public RecentTxIds() {
+                this(NONE);
+            }
+
+            private RecentTxIds(Generation[] generations) {
+                this.generations = generations;
+            }
+
+            /**
+             * Restores the set; {@code ring} holds the fingerprints of sets persisted before they
+             * were kept by time, which are kept for a window from the next timed movement.
+             */
+            @JsonCreator
+            static RecentTxIds of(@JsonProperty("generations") List<Stored> generations, @JsonProperty("ring") long[] ring) {
+                if (generations != null) {
+                    return new RecentTxIds(generations.stream()
+                        .map(stored -> Generation.of(stored.from(), stored.until(), stored.ids()))
+                        .toArray(Generation[]::new));
+                }
+                if (ring == null || ring.length == 0) return new RecentTxIds();
+                return new RecentTxIds(new Generation[]{Generation.of(0L, Generation.UNKNOWN, ring)});
+            }
+
+            public record Stored(long from, long until, long[] ids) {}
+
+            public boolean contains(Kind kind, String txId) {
+                if (txId == null) return false;
+                var fingerprint = fingerprint(kind, txId);
+                for (var generation : generations) {
+                    if (generation.contains(fingerprint)) return true;
+                }
+                return false;
+            }
+
+            /**
+             * Records a movement at the time of its event; events persisted without a time go
+             * into the newest generation.
+             */
+            RecentTxIds record(Kind kind, String txId, Long at) {
+                if (txId == null) return this;
+                var fingerprint = fingerprint(kind, txId);
+                var last = generations.length - 1;
+                if (last >= 0 && (at == null || at < generations[last].from + GENERATION_MILLIS)) {
+                    var copy = generations.clone();
+                    copy[last] = copy[last].add(fingerprint, at);
+                    return new RecentTxIds(copy);
+                }
+                var now = at == null ? 0L : at;
+                var kept = new ArrayList<Generation>(generations.length + 1);
+                for (var generation : generations) {
+                    // movements of unknown time are given a window from now
+                    if (generation.until == Generation.UNKNOWN) kept.add(generation.until(now));
+                    else if (generation.until >= now - WINDOW_MILLIS) kept.add(generation);
+                }
+                kept.add(Generation.empty(now).add(fingerprint, at));
+                return new RecentTxIds(kept.toArray(NONE));
+            }
+
+            @JsonProperty("generations")
+            List<Stored> generations() {
+                return Arrays.stream(generations).map(generation -> new Stored(generation.from, generation.until, generation.ids())).toList();
+            }
+
+            public int size() {
+                return Arrays.stream(generations).mapToInt(generation -> generation.size).sum();
+            }
+
+            // FNV-1a over the kind and the txId, never 0 so empty slots don't match
+            private static long fingerprint(Kind kind, String txId) {
+                var hash = 0xcbf29ce484222325L ^ kind.ordinal();
+                for (int i = 0; i < txId.length(); i++) {
+                    hash ^= txId.charAt(i);
+                    hash *= 0x100000001b3L;
+                }
+                return hash == 0 ? 1 : hash;
+            }
+
+            private static final class Generation {
+
+                private static final int FANOUT = 32;
+                private static final long UNKNOWN = Long.MIN_VALUE;
+
+                // when the generation started and its latest movement, both by event time
+                private final long from;
+                private final long until;
+                private final long[][][] table;
+                private final int size;
+
+                private Generation(long from, long until, long[][][] table, int size) {
+                    this.from = from;
+                    this.until = until;
+                    this.table = table;
+                    this.size = size;
+                }
+
+                static Generation empty(long from) {
+                    return new Generation(from, UNKNOWN, new long[FANOUT][][], 0);
+                }
+
+                static Generation of(long from, long until, long[] ids) {
+                    var counts = new int[FANOUT * FANOUT];
+                    for (long id : ids) if (id != 0) counts[slot(id)]++;
+                    var table = new long[FANOUT][][];
+                    var size = 0;
+                    for (long id : ids) {
+                        if (id == 0) continue;
+                        var slot = slot(id);
+                        var mid = table[slot / FANOUT] == null ? table[slot / FANOUT] = new long[FANOUT][] : table[slot / FANOUT];
+                        if (mid[slot % FANOUT] == null) mid[slot % FANOUT] = new long[counts[slot]];
+                        mid[slot % FANOUT][--counts[slot]] = id;
+                        size++;
+                    }
+                    return new Generation(from, until, table, size);
+                }
+
+                Generation until(long at) {
+                    return new Generation(from, at, table, size);
+                }
+
+                boolean contains(long fingerprint) {
+                    var slot = slot(fingerprint);
+                    var mid = table[slot / FANOUT];
+                    var ids = mid == null ? null : mid[slot % FANOUT];
+                    if (ids == null) return false;
+                    for (long id : ids) {
+                        if (id == fingerprint) return true;
+                    }
+                    return false;
+                }
+
+                Generation add(long fingerprint, Long at) {
+                    var slot = slot(fingerprint);
+                    var top = table.clone();
+                    var mid = top[slot / FANOUT] == null ? new long[FANOUT][] : top[slot / FANOUT].clone();
+                    var ids = mid[slot % FANOUT];
+                    var grown = ids == null ? new long[1] : Arrays.copyOf(ids, ids.length + 1);
+                    grown[grown.length - 1] = fingerprint;
+                    mid[slot % FANOUT] = grown;
+                    top[slot / FANOUT] = mid;
+                    return new Generation(from, at == null ? until : Math.max(until, at), top, size + 1);
+                }
+
+                long[] ids() {
+                    var ids = new long[size];
+                    var i = 0;
+                    for (var mid : table) {
+                        if (mid == null) continue;
+                        for (var slot : mid) {
+                            if (slot == null) continue;
+                            System.arraycopy(slot, 0, ids, i, slot.length);
+                            i += slot.length;
+                        }
+                    }
+                    return ids;
+                }
+
+                private static int slot(long fingerprint) {
+                    return (int) (fingerprint & (FANOUT * FANOUT - 1));
+                }
+
+            }
+
+        }
+
     }
 
 }
@@ -0,0 +1,82 @@
+package com.example.account.application;
+
+import com.example.util.Metrics;
+import com.typesafe.config.Config;
+import com.typesafe.config.ConfigFactory;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.LongAdder;
+
+public class BalanceCache {
+
+    /**
+     * BalanceCache keeps recently read account balances on this node for a short TTL, so that
+     * dashboards polling a popular account are answered by the endpoint instead of the entity.
+     *
+     * Entries are dropped as soon as an event for their account is consumed by
+     * {@link BalanceCacheInvalidator}. Consumers run on one node per slice of accounts, so on
+     * other nodes the TTL is what bounds how stale a cached balance can be.
+     *
+     * Configured under payment.balance-cache in application.conf.
+     *
+     */
+
+    private static final Config config = ConfigFactory.load().getConfig("payment.balance-cache");
+    private static final boolean enabled = config.getBoolean("enabled");
+    private static final int maxSize = config.getInt("max-size");
+    private static final long ttlMillis = config.getDuration("ttl").toMillis();
+
+    private record Entry(Account.Balance balance, long stored) {}
+
+    private static final Map<String, Entry> balances = new LinkedHashMap<>(1024, 0.75f, false) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+            return size() > maxSize;
+        }
+    };
+
+    private static final LongAdder hits = reads("hit");
+    private static final LongAdder misses = reads("miss");
+    private static final LongAdder invalidated = Metrics.counter(
+        "payment_balance_cache_invalidations_total", "Cached balances dropped because an account event was consumed.");
+
+    public static Optional<Account.Balance> get(String accountId) {
+        if (!enabled) return Optional.empty();
+        Entry entry;
+        synchronized (balances) {
+            entry = balances.get(accountId);
+            if (entry != null && System.currentTimeMillis() - entry.stored() > ttlMillis) {
+                balances.remove(accountId);
+                entry = null;
+            }
+        }
+        (entry == null ? misses : hits).increment();
+        return entry == null ? Optional.empty() : Optional.of(entry.balance());
+    }
+
+    public static void put(String accountId, Account.Balance balance) {
+        if (!enabled) return;
+        var entry = new Entry(balance, System.currentTimeMillis());
+        synchronized (balances) {
+            // never replace a balance with an older one read concurrently
+            var current = balances.get(accountId);
+            if (current == null || current.balance().version() <= balance.version()) balances.put(accountId, entry);
+        }
+    }
+
+    public static void invalidate(String accountId) {
+        if (!enabled) return;
+        synchronized (balances) {
+            if (balances.remove(accountId) != null) invalidated.increment();
+        }
+    }
+
+    private static LongAdder reads(String result) {
+        return Metrics.counter(
+            "payment_balance_cache_reads_total", "Balance reads served from the node's balance cache (hit) or the entity (miss).",
+            "result", result);
+    }
+
+}
@@ -0,0 +1,21 @@
+package com.example.account.application;
+
+import akka.javasdk.annotations.ComponentId;
+import akka.javasdk.annotations.Consume;
+import akka.javasdk.consumer.Consumer;
+
+@ComponentId("balance-cache-invalidator")
+@Consume.FromEventSourcedEntity(Account.class)
+public class BalanceCacheInvalidator extends Consumer {
+
+    /**
+     * Drops the cached balance of an account whenever one of its events is consumed, whatever
+     * the event, since every account event changes the account's version.
+     */
+
+    public Effect onEvent(Account.Event event) {
+        messageContext().eventSubject().ifPresent(BalanceCache::invalidate);
+        return effects().done();
+    }
+
+}
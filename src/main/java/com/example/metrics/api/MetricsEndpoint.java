@@ -0,0 +1,20 @@
+package com.example.metrics.api;
+
+import akka.http.javadsl.model.HttpResponse;
+import akka.javasdk.annotations.Acl;
+import akka.javasdk.annotations.http.Get;
+import akka.javasdk.annotations.http.HttpEndpoint;
+import akka.javasdk.http.HttpResponses;
+import com.example.util.Metrics;
+
+@HttpEndpoint("/metrics")
+// scraped from inside the project, never by callers from the internet
+@Acl(allow = @Acl.Matcher(service = "*"))
+public class MetricsEndpoint {
+
+    @Get("")
+    public HttpResponse scrape() {
+        return HttpResponses.ok(Metrics.scrape());
+    }
+
+}
@@ -1,6 +1,9 @@
 package com.example.mock;
 
 import com.example.account.application.Account;
+import com.example.util.CallMetrics;
+import com.example.util.ResilientCall;
+import com.example.util.Tracing;
 import akka.javasdk.client.ComponentClient;
 
 import java.util.concurrent.CompletionStage;
@@ -18,14 +21,18 @@ public class Clearing {
      *
      */
 
-    public static CompletionStage<ClearingResult> clear(Clear.Funds request, ComponentClient client) {
-        return client.forEventSourcedEntity(request.account)
-            .method(Account::deposit)
-            .invokeAsync(request.amount)
+    private static final CallMetrics deposit = CallMetrics.of("Account::deposit");
+    private static final ResilientCall depositFunds = ResilientCall.retryable("Account::deposit", "account");
+
+    public static CompletionStage<ClearingResult> clear(Clear.Funds request, ComponentClient client, Tracing.TraceContext trace) {
+        return FaultInjector.inject(FaultInjector.Service.CLEARING, () -> depositFunds
+            .execute(request.account, () -> deposit.time(trace, () -> client.forEventSourcedEntity(request.account)
+                .method(Account::deposit)
+                .invokeAsync(new Account.Command.Deposit(request.txId, request.amount))))
             .thenApply(depositResult -> switch(depositResult) {
                 case DepositSucceed __ -> new ClearingResult.Accepted();
                 case DepositFailed error -> new ClearingResult.Rejected(error.errorMsg());
-            });
+            }));
     }
 
     public sealed interface Clear {
@@ -0,0 +1,239 @@
+package com.example.mock;
+
+import akka.javasdk.client.ComponentClient;
+import com.example.util.Metrics;
+import com.typesafe.config.Config;
+import com.typesafe.config.ConfigFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+public class FaultInjector {
+
+    /**
+     * FaultInjector adds latency, errors and timeouts to the mock services, so the workflow's step
+     * timeouts, retries and failover can be exercised against realistic slowness.
+     *
+     * Each service has a profile:
+     * - a latency distribution: none, fixed, uniform (between latency and max-latency) or
+     *   log-normal (median latency, spread sigma, capped at max-latency)
+     * - an error rate: the call fails after its latency, without reaching the service
+     * - a timeout rate: the call hangs for the timeout and then fails, without reaching the service
+     * - a lost reply rate: the call reaches the service, then hangs for the timeout and fails, so
+     *   the caller sees a timeout for a call that was applied
+     *
+     * Profiles are read from payment.faults in application.conf and can be replaced at runtime
+     * through the /faults endpoint. Replaced profiles are stored in {@link FaultProfiles}, which
+     * every node reads each refresh-interval, so a profile set through one node reaches the others
+     * within that interval. With the default profile calls go straight to the service.
+     *
+     */
+
+    private static final Logger log = LoggerFactory.getLogger(FaultInjector.class);
+
+    private static final Config config = ConfigFactory.load().getConfig("payment.faults");
+    private static final long refreshIntervalMillis = config.getDuration("refresh-interval").toMillis();
+
+    private static final Map<Service, Profile> configured = new EnumMap<>(Service.class);
+    private static final Map<Service, Profile> profiles = new ConcurrentHashMap<>();
+    private static final Map<Service, LongAdder> errors = new EnumMap<>(Service.class);
+    private static final Map<Service, LongAdder> timeouts = new EnumMap<>(Service.class);
+    private static final Map<Service, LongAdder> lostReplies = new EnumMap<>(Service.class);
+    // bumped on every local change, so a refresh read before the change does not undo it
+    private static final AtomicLong generation = new AtomicLong();
+
+    static {
+        for (Service service : Service.values()) {
+            var profile = Profile.of(config.getConfig(service.key()).withFallback(config.getConfig("defaults")));
+            configured.put(service, profile);
+            profiles.put(service, profile);
+            errors.put(service, Metrics.counter(
+                "payment_faults_injected_total", "Faults injected into mock service calls.",
+                "service", service.key(), "fault", "error"));
+            timeouts.put(service, Metrics.counter(
+                "payment_faults_injected_total", "Faults injected into mock service calls.",
+                "service", service.key(), "fault", "timeout"));
+            lostReplies.put(service, Metrics.counter(
+                "payment_faults_injected_total", "Faults injected into mock service calls.",
+                "service", service.key(), "fault", "lost-reply"));
+        }
+    }
+
+    public enum Service {
+        VALIDATION,
+        SANCTION,
+        LIQUIDITY,
+        POSTING,
+        CLEARING;
+
+        String key() {
+            return name().toLowerCase();
+        }
+    }
+
+    public enum Distribution {
+        NONE,
+        FIXED,
+        UNIFORM,
+        LOG_NORMAL
+    }
+
+    public record Profile(
+        Distribution distribution,
+        long latencyMillis,
+        long maxLatencyMillis,
+        double sigma,
+        double errorRate,
+        double timeoutRate,
+        long timeoutMillis,
+        double lostReplyRate
+    ) {
+
+        public Profile(
+            Distribution distribution,
+            long latencyMillis,
+            long maxLatencyMillis,
+            double sigma,
+            double errorRate,
+            double timeoutRate,
+            long timeoutMillis
+        ) {
+            this(distribution, latencyMillis, maxLatencyMillis, sigma, errorRate, timeoutRate, timeoutMillis, 0);
+        }
+
+        static Profile of(Config config) {
+            return new Profile(
+                Distribution.valueOf(config.getString("distribution").toUpperCase().replace('-', '_')),
+                config.getDuration("latency").toMillis(),
+                config.getDuration("max-latency").toMillis(),
+                config.getDouble("sigma"),
+                config.getDouble("error-rate"),
+                config.getDouble("timeout-rate"),
+                config.getDuration("timeout").toMillis(),
+                config.getDouble("lost-reply-rate")
+            );
+        }
+
+        boolean active() {
+            return distribution != Distribution.NONE || errorRate > 0 || timeoutRate > 0 || lostReplyRate > 0;
+        }
+
+        long sampleLatency(ThreadLocalRandom random) {
+            return switch (distribution) {
+                case NONE -> 0;
+                case FIXED -> latencyMillis;
+                case UNIFORM -> latencyMillis + (long) (random.nextDouble() * Math.max(0, maxLatencyMillis - latencyMillis));
+                case LOG_NORMAL -> {
+                    var sample = (long) (Math.max(1, latencyMillis) * Math.exp(sigma * random.nextGaussian()));
+                    yield maxLatencyMillis > 0 ? Math.min(sample, maxLatencyMillis) : sample;
+                }
+            };
+        }
+
+    }
+
+    public static class InjectedFault extends RuntimeException {
+
+        InjectedFault(Service service) {
+            super("Injected fault in " + service.key());
+        }
+
+    }
+
+    public static <T> CompletionStage<T> inject(Service service, Supplier<CompletionStage<T>> call) {
+        var profile = profiles.get(service);
+        if (!profile.active()) return call.get();
+
+        var random = ThreadLocalRandom.current();
+        var fault = random.nextDouble();
+        if (fault < profile.timeoutRate()) {
+            timeouts.get(service).increment();
+            return delayed(profile.timeoutMillis(), () -> CompletableFuture.failedFuture(
+                new TimeoutException("Injected timeout in " + service.key())));
+        }
+
+        var latency = profile.sampleLatency(random);
+        if (fault < profile.timeoutRate() + profile.errorRate()) {
+            errors.get(service).increment();
+            return delayed(latency, () -> CompletableFuture.failedFuture(new InjectedFault(service)));
+        }
+        if (fault < profile.timeoutRate() + profile.errorRate() + profile.lostReplyRate()) {
+            lostReplies.get(service).increment();
+            return delayed(latency, call)
+                .thenCompose(__ -> delayed(profile.timeoutMillis(), () -> CompletableFuture.<T>failedFuture(
+                    new TimeoutException("Injected lost reply in " + service.key()))));
+        }
+        return delayed(latency, call);
+    }
+
+    private static <T> CompletionStage<T> delayed(long millis, Supplier<CompletionStage<T>> call) {
+        if (millis <= 0) return call.get();
+        return CompletableFuture
+            .supplyAsync(() -> null, CompletableFuture.delayedExecutor(millis, TimeUnit.MILLISECONDS))
+            .thenCompose(__ -> call.get());
+    }
+
+    public static Map<Service, Profile> profiles() {
+        return new EnumMap<>(profiles);
+    }
+
+    /**
+     * Replaces the profile of a service on every node: stored in {@link FaultProfiles}, applied on
+     * this node straight away and on the others at their next refresh.
+     */
+    public static CompletionStage<Map<Service, Profile>> update(ComponentClient client, Service service, Profile profile) {
+        return client.forKeyValueEntity(FaultProfiles.ID)
+            .method(FaultProfiles::update)
+            .invokeAsync(new FaultProfiles.Update(service, profile))
+            .thenApply(FaultInjector::apply);
+    }
+
+    /**
+     * Restores the configured profile of a service on every node.
+     */
+    public static CompletionStage<Map<Service, Profile>> reset(ComponentClient client, Service service) {
+        return client.forKeyValueEntity(FaultProfiles.ID)
+            .method(FaultProfiles::reset)
+            .invokeAsync(service)
+            .thenApply(FaultInjector::apply);
+    }
+
+    /**
+     * Starts reading the stored profiles on this node every refresh-interval.
+     */
+    public static void start(ComponentClient client) {
+        refresh(client);
+    }
+
+    private static void refresh(ComponentClient client) {
+        var seen = generation.get();
+        client.forKeyValueEntity(FaultProfiles.ID)
+            .method(FaultProfiles::get)
+            .invokeAsync()
+            .whenComplete((stored, error) -> {
+                if (error != null) log.warn("Reading the fault profiles failed, keeping the current ones.", error);
+                else if (generation.get() == seen) apply(stored);
+                CompletableFuture.delayedExecutor(refreshIntervalMillis, TimeUnit.MILLISECONDS).execute(() -> refresh(client));
+            });
+    }
+
+    private static Map<Service, Profile> apply(FaultProfiles.State stored) {
+        generation.incrementAndGet();
+        for (Service service : Service.values()) {
+            profiles.put(service, stored.overrides().getOrDefault(service, configured.get(service)));
+        }
+        return profiles();
+    }
+
+}
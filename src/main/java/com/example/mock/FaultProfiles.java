@@ -0,0 +1,61 @@
+package com.example.mock;
+
+import akka.javasdk.annotations.ComponentId;
+import akka.javasdk.keyvalueentity.KeyValueEntity;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+@ComponentId("fault-profiles")
+public class FaultProfiles extends KeyValueEntity<FaultProfiles.State> {
+
+    /**
+     * FaultProfiles holds the fault profiles set at runtime through the /faults endpoint, so that
+     * every node of the service injects the same faults.
+     *
+     * There is a single entity, keyed by {@link #ID}. Only the profiles replaced at runtime are
+     * kept; a service without one uses its profile from application.conf. {@link FaultInjector}
+     * reads the entity periodically on each node and applies what it finds.
+     *
+     */
+
+    public static final String ID = "faults";
+
+    @Override
+    public State emptyState() { return new State(Map.of()); }
+
+    public Effect<State> update(Update update) {
+        var updated = currentState().with(update.service(), update.profile());
+        return effects()
+            .updateState(updated)
+            .thenReply(updated);
+    }
+
+    public Effect<State> reset(FaultInjector.Service service) {
+        var current = currentState();
+        if (!current.overrides().containsKey(service)) return effects().reply(current);
+        var updated = current.with(service, null);
+        return effects()
+            .updateState(updated)
+            .thenReply(updated);
+    }
+
+    public Effect<State> get() {
+        return effects().reply(currentState());
+    }
+
+    public record Update(FaultInjector.Service service, FaultInjector.Profile profile) {}
+
+    public record State(Map<FaultInjector.Service, FaultInjector.Profile> overrides) {
+
+        State with(FaultInjector.Service service, FaultInjector.Profile profile) {
+            var updated = new EnumMap<FaultInjector.Service, FaultInjector.Profile>(FaultInjector.Service.class);
+            updated.putAll(overrides);
+            if (profile == null) updated.remove(service);
+            else updated.put(service, profile);
+            return new State(updated);
+        }
+
+    }
+
+}
@@ -1,5 +1,9 @@
 package com.example.mock;
 
+import com.example.util.CallMetrics;
+import com.example.util.HedgedCall;
+import com.example.util.ResilientCall;
+import com.example.util.Tracing;
 import com.example.util.Validator;
 import com.example.account.application.Account;
 import akka.javasdk.client.ComponentClient;
@@ -16,24 +20,28 @@ public class Liquidity {
      *
      */
 
-    public static CompletionStage<LiquidityResult> verify(Verify.Funds request, ComponentClient client) {
-        return Validator
+    private static final CallMetrics verifyFunds = CallMetrics.of("Account::verifyFunds");
+    private static final ResilientCall verifyAccountFunds = ResilientCall.retryable("Account::verifyFunds", "account");
+    private static final HedgedCall hedgedVerifyFunds = HedgedCall.of(verifyFunds);
+
+    public static CompletionStage<LiquidityResult> verify(Verify.Funds request, ComponentClient client, Tracing.TraceContext trace) {
+        return FaultInjector.inject(FaultInjector.Service.LIQUIDITY, () -> Validator
             .validate(
                 Validator.isLtEqZero(request.amount, "Amount must be greater than 0")
             )
             .resolve(
                 Validator.verify(
-                    client
+                    () -> verifyAccountFunds.execute(request.account, () -> hedgedVerifyFunds.execute(() -> verifyFunds.time(trace, () -> client
                         .forEventSourcedEntity(request.account)
-                        .method(Account::verifyFunds),
-                    request.amount,
+                        .method(Account::verifyFunds)
+                        .invokeAsync(request.amount)))),
                     "Source Account Funds Not Available"
                 )
             )
             .handleAsync((result, err) -> switch(result){
                 case SUCCESS -> new LiquidityResult.Approved();
                 case ERROR -> new LiquidityResult.Rejected(err);
-            });
+            }));
     }
 
     public sealed interface Verify {
@@ -1,6 +1,9 @@
 package com.example.mock;
 
 import com.example.account.application.Account;
+import com.example.util.CallMetrics;
+import com.example.util.ResilientCall;
+import com.example.util.Tracing;
 import akka.javasdk.client.ComponentClient;
 
 import java.util.concurrent.CompletionStage;
@@ -19,24 +22,30 @@ public class Posting {
      *
      */
 
-    public static CompletionStage<PostResult> post(Post.Funds request, ComponentClient client) {
-        return client.forEventSourcedEntity(request.account)
-            .method(Account::withdraw)
-            .invokeAsync(request.amount)
+    private static final CallMetrics withdraw = CallMetrics.of("Account::withdraw");
+    private static final CallMetrics deposit = CallMetrics.of("Account::deposit");
+    private static final ResilientCall withdrawFunds = ResilientCall.retryable("Account::withdraw", "account");
+
+    public static CompletionStage<PostResult> post(Post.Funds request, ComponentClient client, Tracing.TraceContext trace) {
+        return FaultInjector.inject(FaultInjector.Service.POSTING, () -> withdrawFunds
+            .execute(request.account, () -> withdraw.time(trace, () -> client.forEventSourcedEntity(request.account)
+                .method(Account::withdraw)
+                .invokeAsync(new Account.Command.Withdraw(request.txId, request.amount))))
             .thenApply(withdrawResult -> switch(withdrawResult) {
                 case WithdrawSucceed __ -> new PostResult.Approved();
                 case WithdrawFailed error -> new PostResult.Rejected(error.errorMsg());
-            });
+            }));
     }
 
-    public static CompletionStage<PostResult> reversal(Post.Reversal request, ComponentClient client) {
-        return client.forEventSourcedEntity(request.account)
-            .method(Account::deposit)
-            .invokeAsync(request.amount)
+    public static CompletionStage<PostResult> reversal(Post.Reversal request, ComponentClient client, Tracing.TraceContext trace) {
+        return FaultInjector.inject(FaultInjector.Service.POSTING, () -> deposit
+            .time(trace, () -> client.forEventSourcedEntity(request.account)
+                .method(Account::deposit)
+                .invokeAsync(new Account.Command.Deposit(request.txId, request.amount)))
             .thenApply(depositResult -> switch(depositResult) {
                 case DepositSucceed __ -> new PostResult.Approved();
                 case DepositFailed error -> new PostResult.Rejected(error.errorMsg());
-            });
+            }));
     }
 
     public sealed interface Post {
@@ -15,7 +15,7 @@ public class Sanction {
      */
 
     public static CompletionStage<SanctionResult> check(Check.Accounts request) {
-        return Validator
+        return FaultInjector.inject(FaultInjector.Service.SANCTION, () -> Validator
             .validate(
                 Validator.isTrue(request.txId.isEmpty(), "Transaction ID is Required"),
                 Validator.isTrue(request.source.isEmpty(), "Source Account is Required"),
@@ -24,7 +24,7 @@ public class Sanction {
             .handleAsync((result, err) -> switch(result){
                 case SUCCESS -> new SanctionResult.Approved();
                 case ERROR -> new SanctionResult.Rejected(err);
-            });
+            }));
     }
 
     public sealed interface Check {
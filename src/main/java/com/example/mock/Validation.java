@@ -1,10 +1,13 @@
 package com.example.mock;
 
 import com.example.account.application.Account;
+import com.example.util.CallMetrics;
+import com.example.util.HedgedCall;
+import com.example.util.ResilientCall;
+import com.example.util.Tracing;
+import com.example.util.TxLog;
 import com.example.util.Validator;
 import akka.javasdk.client.ComponentClient;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
 
 import java.util.concurrent.CompletionStage;
 
@@ -23,35 +26,73 @@ public class Validation {
      *
      */
 
-    private static final Logger log = LoggerFactory.getLogger(Validation.class);
+    private static final TxLog log = TxLog.getLogger(Validation.class);
 
-    public static CompletionStage<ValidationResult> validate(Validate.Transaction request, ComponentClient client) {
-        log.info("Validating transaction: {}", request);
-        return Validator
+    private static final CallMetrics exists = CallMetrics.of("Account::exists");
+    private static final ResilientCall accountExists = ResilientCall.retryable("Account::exists", "account");
+    private static final HedgedCall hedgedExists = HedgedCall.of(exists);
+
+    public static CompletionStage<ValidationResult> validate(Validate.Transaction request, ComponentClient client, Tracing.TraceContext trace) {
+        log.info(request.txId, "Validating transaction: {}", request);
+        return FaultInjector.inject(FaultInjector.Service.VALIDATION, () -> fields(request)
             .validate(
-                Validator.isTrue(request.txId.isEmpty(), "Transaction ID is Required"),
-                Validator.isTrue(request.amount <= 0, "Transaction amount must be greater than 0"),
                 Validator.isTrue(request.source.isEmpty(), "Source Account is Required"),
                 Validator.isTrue(request.destination.isEmpty(), "Destination Account is Required")
             )
             .resolve(
-                Validator.entityExists(
-                    client.forEventSourcedEntity(request.source).method(Account::get),
-                    "Source Account Not Found"
-                ),
-                Validator.entityExists(
-                    client.forEventSourcedEntity(request.destination).method(Account::get),
-                    "Destination Account Not Found"
-                )
+                exists(request.source, "Source Account Not Found", client, trace),
+                exists(request.destination, "Destination Account Not Found", client, trace)
+            )
+            .handleAsync(Validation::result));
+    }
+
+    /**
+     * Validates the source of many payments once, such as a payout's, so each payment out of it
+     * only needs {@link #validateDestination}.
+     */
+    public static CompletionStage<ValidationResult> validateSource(Validate.Source request, ComponentClient client, Tracing.TraceContext trace) {
+        log.info(request.txId, "Validating source: {}", request);
+        return FaultInjector.inject(FaultInjector.Service.VALIDATION, () -> Validator
+            .validate(
+                Validator.isTrue(request.txId.isEmpty(), "Transaction ID is Required"),
+                Validator.isTrue(request.source.isEmpty(), "Source Account is Required")
             )
-            .handleAsync((result, err) -> switch(result){
-                case SUCCESS -> new ValidationResult.Approved();
-                case ERROR -> new ValidationResult.Rejected(err);
-            });
+            .resolve(exists(request.source, "Source Account Not Found", client, trace))
+            .handleAsync(Validation::result));
+    }
+
+    public static CompletionStage<ValidationResult> validateDestination(Validate.Transaction request, ComponentClient client, Tracing.TraceContext trace) {
+        log.info(request.txId, "Validating destination: {}", request);
+        return FaultInjector.inject(FaultInjector.Service.VALIDATION, () -> fields(request)
+            .validate(Validator.isTrue(request.destination.isEmpty(), "Destination Account is Required"))
+            .resolve(exists(request.destination, "Destination Account Not Found", client, trace))
+            .handleAsync(Validation::result));
+    }
+
+    private static Validator.ValidationBuilder fields(Validate.Transaction request) {
+        return Validator.validate(
+            Validator.isTrue(request.txId.isEmpty(), "Transaction ID is Required"),
+            Validator.isTrue(request.amount <= 0, "Transaction amount must be greater than 0")
+        );
+    }
+
+    private static Validator.ServiceValidation exists(String account, String notFound, ComponentClient client, Tracing.TraceContext trace) {
+        return Validator.verify(
+            () -> accountExists.execute(account, () -> hedgedExists.execute(() -> exists.time(trace, () -> client.forEventSourcedEntity(account).method(Account::exists).invokeAsync()))),
+            notFound
+        );
+    }
+
+    private static ValidationResult result(Validator.Result result, String err) {
+        return switch (result) {
+            case SUCCESS -> new ValidationResult.Approved();
+            case ERROR -> new ValidationResult.Rejected(err);
+        };
     }
 
     public sealed interface Validate  {
         record Transaction(String txId, String source, String destination, int amount) implements Validate {}
+        record Source(String txId, String source) implements Validate {}
     }
 
     public sealed interface ValidationResult  {
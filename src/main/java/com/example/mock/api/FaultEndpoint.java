@@ -0,0 +1,91 @@
+package com.example.mock.api;
+
+import akka.http.javadsl.model.HttpResponse;
+import akka.javasdk.annotations.Acl;
+import akka.javasdk.annotations.http.Delete;
+import akka.javasdk.annotations.http.Get;
+import akka.javasdk.annotations.http.HttpEndpoint;
+import akka.javasdk.annotations.http.Put;
+import akka.javasdk.client.ComponentClient;
+import akka.javasdk.http.HttpResponses;
+import com.example.mock.FaultInjector;
+import com.example.util.Validator;
+import com.example.util.Validator.Mode;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+
+import static com.example.util.Validator.isTrue;
+
+@HttpEndpoint("/faults")
+// only other services of the project may inject faults, never callers from the internet
+@Acl(allow = @Acl.Matcher(service = "*"))
+public class FaultEndpoint {
+
+    private static final Logger log = LoggerFactory.getLogger(FaultEndpoint.class);
+
+    private final ComponentClient client;
+
+    public FaultEndpoint(ComponentClient client) {
+        this.client = client;
+    }
+
+    @Get("")
+    public Map<FaultInjector.Service, FaultInjector.Profile> getProfiles() {
+        return FaultInjector.profiles();
+    }
+
+    @Put("/{service}")
+    public CompletionStage<HttpResponse> updateProfile(String service, FaultInjector.Profile profile) {
+        var parsed = parse(service);
+        if (parsed == null) return badRequest("Unknown service: " + service);
+        if (profile == null) return badRequest("Fault profile is Required");
+        return Validator
+            .validate(
+                isTrue(profile.distribution() == null, "Distribution is Required"),
+                isTrue(profile.latencyMillis() < 0, "Latency must not be negative"),
+                isTrue(profile.maxLatencyMillis() < 0, "Max latency must not be negative"),
+                isTrue(!(profile.sigma() >= 0 && Double.isFinite(profile.sigma())), "Sigma must not be negative"),
+                isTrue(!isRate(profile.errorRate()), "Error rate must be between 0 and 1"),
+                isTrue(!isRate(profile.timeoutRate()), "Timeout rate must be between 0 and 1"),
+                isTrue(profile.timeoutMillis() < 0, "Timeout must not be negative"),
+                isTrue(!isRate(profile.lostReplyRate()), "Lost reply rate must be between 0 and 1")
+            )
+            .mode(Mode.FAIL_FAST)
+            .handle((result, err) -> switch (result) {
+                case SUCCESS -> {
+                    log.info("Fault profile for [{}] set to {}.", parsed, profile);
+                    yield FaultInjector.update(client, parsed, profile).thenApply(HttpResponses::ok);
+                }
+                case ERROR -> badRequest(err.strip());
+            });
+    }
+
+    @Delete("/{service}")
+    public CompletionStage<HttpResponse> resetProfile(String service) {
+        var parsed = parse(service);
+        if (parsed == null) return badRequest("Unknown service: " + service);
+        log.info("Fault profile for [{}] reset to configuration.", parsed);
+        return FaultInjector.reset(client, parsed).thenApply(HttpResponses::ok);
+    }
+
+    private static CompletionStage<HttpResponse> badRequest(String message) {
+        return CompletableFuture.completedFuture(HttpResponses.badRequest(message));
+    }
+
+    private static boolean isRate(double rate) {
+        return rate >= 0 && rate <= 1;
+    }
+
+    private static FaultInjector.Service parse(String service) {
+        try {
+            return FaultInjector.Service.valueOf(service.toUpperCase());
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+}
@@ -0,0 +1,82 @@
+package com.example.payout.api;
+
+import akka.http.javadsl.model.HttpResponse;
+import akka.javasdk.annotations.Acl;
+import akka.javasdk.annotations.http.Get;
+import akka.javasdk.annotations.http.HttpEndpoint;
+import akka.javasdk.annotations.http.Post;
+import akka.javasdk.client.ComponentClient;
+import akka.javasdk.http.HttpResponses;
+import com.example.payout.application.PayoutWorkflow;
+import com.example.payout.domain.Payout;
+import com.example.util.Validator;
+import com.example.util.Validator.Mode;
+import com.typesafe.config.ConfigFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+
+import static com.example.util.Validator.isGtLimit;
+import static com.example.util.Validator.isTrue;
+
+@HttpEndpoint("/payout")
+@Acl(allow = @Acl.Matcher(principal = Acl.Principal.INTERNET))
+public class PayoutEndpoint {
+
+    private static final Logger log = LoggerFactory.getLogger(PayoutEndpoint.class);
+
+    private static final int maxRecipients = ConfigFactory.load().getConfig("payment.payout").getInt("max-recipients");
+
+    private final ComponentClient client;
+
+    public PayoutEndpoint(ComponentClient client) {
+        this.client = client;
+    }
+
+    @Get("/{payoutId}")
+    public CompletionStage<PayoutWorkflow.State> getPayout(String payoutId) {
+        log.debug("Get payout with id [{}].", payoutId);
+        return client
+            .forWorkflow(payoutId)
+            .method(PayoutWorkflow::get)
+            .invokeAsync()
+            .thenApply(state -> state);
+    }
+
+    /**
+     * A payout is checked before its workflow is started: it needs a source and at least one
+     * recipient, each with an account and a positive amount, and its total must fit an amount.
+     * An invalid payout gets a 400.
+     */
+    @Post("/{payoutId}/process")
+    public CompletionStage<HttpResponse> process(String payoutId, Payout.Request request) {
+        var recipients = request.recipients() == null ? List.<Payout.Recipient>of() : request.recipients();
+        log.debug("Process payout with id [{}] to [{}] recipients.", payoutId, recipients.size());
+        var total = recipients.stream().filter(Objects::nonNull).mapToLong(Payout.Recipient::amount).sum();
+        return Validator
+            .validate(
+                isTrue(request.from() == null || request.from().isBlank(), "Source Account is Required"),
+                isTrue(recipients.isEmpty(), "Payout has no recipients"),
+                isGtLimit(recipients.size(), maxRecipients, "Payout has more than " + maxRecipients + " recipients"),
+                isTrue(recipients.stream().anyMatch(recipient -> recipient == null || recipient.to() == null || recipient.to().isBlank()),
+                    "Recipient Account is Required"),
+                isTrue(recipients.stream().anyMatch(recipient -> recipient != null && recipient.amount() <= 0),
+                    "Recipient amount must be greater than 0"),
+                isTrue(total > Integer.MAX_VALUE, "Payout total is too large")
+            )
+            .mode(Mode.FAIL_FAST)
+            .handle((result, err) -> switch (result) {
+                case SUCCESS -> client
+                    .forWorkflow(payoutId)
+                    .method(PayoutWorkflow::process)
+                    .invokeAsync(request)
+                    .thenApply(HttpResponses::ok);
+                case ERROR -> CompletableFuture.completedFuture(HttpResponses.badRequest(err.strip()));
+            });
+    }
+
+}
@@ -0,0 +1,429 @@
+package com.example.payout.application;
+
+import com.example.mock.*;
+import akka.javasdk.workflow.Workflow;
+import akka.javasdk.client.ComponentClient;
+import akka.javasdk.annotations.ComponentId;
+import com.example.account.application.Account;
+import com.example.payout.domain.Payout;
+import com.example.util.Parallel;
+import com.example.util.Tracing;
+import com.example.util.TxLog;
+import com.typesafe.config.Config;
+import com.typesafe.config.ConfigFactory;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.stream.IntStream;
+
+import static com.example.payout.application.PayoutWorkflow.State.Status.*;
+import static com.example.payout.application.PayoutWorkflow.State.CreditStatus;
+import static com.example.payout.domain.Payout.Response.*;
+import static com.example.mock.Validation.Validate;
+import static com.example.mock.Validation.ValidationResult;
+import static com.example.mock.Sanction.Check;
+import static com.example.mock.Sanction.SanctionResult;
+import static java.time.Duration.ofSeconds;
+
+@ComponentId("payout")
+public class PayoutWorkflow extends Workflow<PayoutWorkflow.State> {
+
+    /**
+     * PayoutWorkflow pays many recipients from one source account in a single workflow, so a
+     * payroll run debits the employer's account once instead of once per recipient.
+     *
+     * The source account is validated once, then recipients are validated and sanction-checked
+     * in parallel, and rejected recipients are left out of the payout. The total for the approved recipients is then withdrawn from the
+     * source in one posting, and the recipients are credited in parallel, at most
+     * max-parallel-credits at a time. Recipients whose credit is rejected are refunded to the
+     * source in one reversal.
+     *
+     * Every movement has its own txId derived from the payoutId under a payout: prefix, so a
+     * retried step never credits a recipient twice and no id collides with a transfer's. A credit that fails with an error rather than a rejection may still
+     * have been applied, so it is never refunded on that account: the error fails the clearing
+     * step, which the runtime retries.
+     *
+     * When posting or clearing still fails after its retries, the failover handler finds out
+     * what was applied by fencing it on the account, see {@link Account#fence}. An interrupted
+     * posting goes on to clearing if the source was debited and fails the payout otherwise; an
+     * interrupted clearing is compensated, refunding every credit that was not applied.
+     *
+     * Configured under payment.payout in application.conf.
+     *
+     */
+
+    private static final TxLog txLog = TxLog.getLogger(PayoutWorkflow.class);
+
+    private static final Config config = ConfigFactory.load().getConfig("payment.payout");
+    private static final int maxParallel = config.getInt("max-parallel-credits");
+    private static final Duration stepTimeout = config.getDuration("step-timeout");
+    private static final Duration workflowTimeout = config.getDuration("workflow-timeout");
+
+    final private ComponentClient client;
+
+    public PayoutWorkflow(ComponentClient client) {
+        this.client = client;
+    }
+
+    public record Outcomes(List<String> rejections) {}
+
+    public record Compensation(List<String> rejections, Posting.PostResult result) {}
+
+    @Override
+    public WorkflowDef<State> definition() {
+
+        Step validation = step("validate-recipients")
+            .asyncCall(() -> {
+                var state = currentState();
+                txLog.info(state.payoutId(), "Validating {} payout recipients", state.credits().size());
+                return Validation.validateSource(new Validate.Source(state.postingTxId(), state.from()), client, state.trace())
+                    .thenCompose(source -> switch (source) {
+                        // every recipient is rejected for the source
+                        case ValidationResult.Rejected rejected -> CompletableFuture.completedStage(Collections.nCopies(state.credits().size(), rejected.reason()));
+                        case ValidationResult.Approved __ -> Parallel.map(state.credits(), maxParallel, credit -> check(state, credit));
+                    })
+                    .thenApply(Outcomes::new);
+            })
+            .andThen(Outcomes.class, outcomes -> {
+                var state = currentState().validated(outcomes.rejections());
+                if (state.total(CreditStatus.APPROVED) == 0) {
+                    txLog.warn(state.payoutId(), "No payout recipients approved: {}", state.payoutId());
+                    return effects()
+                        .updateState(state.withStatus(VALIDATION_FAILED, "No recipients approved").complete())
+                        .end();
+                }
+                return effects()
+                    .updateState(state.withStatus(POSTING_PAYOUT, null))
+                    .transitionTo("posting-payout");
+            })
+            .timeout(stepTimeout);
+
+        Step posting = step("posting-payout")
+            .asyncCall(() -> {
+                var state = currentState();
+                var funds = new Posting.Post.Funds(state.postingTxId(), state.from(), state.total(CreditStatus.APPROVED));
+                txLog.info(state.payoutId(), "Posting payout: {}", funds);
+                return Posting.post(funds, client, state.trace());
+            })
+            .andThen(Posting.PostResult.class, result -> switch (result) {
+                case Posting.PostResult.Approved __ -> effects()
+                    .updateState(currentState().withStatus(CLEARING_PAYOUT, null))
+                    .transitionTo("clearing-payout");
+                case Posting.PostResult.Rejected rejected -> {
+                    txLog.warn(currentState().payoutId(), "Payout posting rejected: {}", rejected.reason());
+                    yield effects()
+                        .updateState(currentState().withStatus(POSTING_FAILED, rejected.reason()).complete())
+                        .end();
+                }
+            })
+            .timeout(stepTimeout);
+
+        Step clearing = step("clearing-payout")
+            .asyncCall(() -> {
+                var state = currentState();
+                txLog.info(state.payoutId(), "Clearing {} payout credits", state.count(CreditStatus.APPROVED));
+                return Parallel.map(state.credits(), maxParallel, credit -> clear(state, credit)).thenApply(Outcomes::new);
+            })
+            .andThen(Outcomes.class, outcomes -> {
+                var state = currentState().cleared(outcomes.rejections());
+                if (state.total(CreditStatus.FAILED) == 0) {
+                    txLog.info(state.payoutId(), "Payout completed: {}", state.payoutId());
+                    return effects()
+                        .updateState(state.withStatus(PAYOUT_COMPLETED, null).complete())
+                        .end();
+                }
+                txLog.warn(state.payoutId(), "{} payout credits failed", state.count(CreditStatus.FAILED));
+                return effects()
+                    .updateState(state.withStatus(COMPENSATING, null))
+                    .transitionTo("compensate");
+            })
+            .timeout(stepTimeout);
+
+        Step resolvePosting = step("resolve-posting")
+            .asyncCall(() -> {
+                var state = currentState();
+                txLog.warn(state.payoutId(), "Resolving interrupted payout posting: {}", state.payoutId());
+                return fence(state.from(), Account.Kind.WITHDRAW, state.postingTxId());
+            })
+            .andThen(Boolean.class, applied -> applied
+                ? effects()
+                    .updateState(currentState().withStatus(CLEARING_PAYOUT, null))
+                    .transitionTo("clearing-payout")
+                : effects()
+                    .updateState(currentState().withStatus(POSTING_FAILED, "Posting was not applied").complete())
+                    .end())
+            .timeout(stepTimeout);
+
+        Step compensate = step("compensate")
+            .asyncCall(() -> {
+                var state = currentState();
+                // credits still approved were interrupted with their outcome unknown, fencing them settles it
+                return Parallel.map(state.credits(), maxParallel, credit -> settle(state, credit))
+                    .thenCompose(rejections -> {
+                        var settled = state.cleared(rejections);
+                        if (settled.total(CreditStatus.FAILED) == 0) {
+                            return CompletableFuture.completedStage(new Compensation(rejections, new Posting.PostResult.Approved()));
+                        }
+                        // credits already reversed are counted in the id, so a later compensation is not taken for a retry of this one
+                        var reversal = new Posting.Post.Reversal(
+                            state.reversalTxId(settled.count(CreditStatus.REVERSED)), state.from(), settled.total(CreditStatus.FAILED));
+                        txLog.info(state.payoutId(), "Compensating failed payout credits: {}", reversal);
+                        return Posting.reversal(reversal, client, state.trace()).thenApply(result -> new Compensation(rejections, result));
+                    });
+            })
+            .andThen(Compensation.class, compensation -> {
+                var settled = currentState().cleared(compensation.rejections());
+                return switch (compensation.result()) {
+                    case Posting.PostResult.Approved __ -> {
+                        var state = settled.reversed();
+                        var status = state.count(CreditStatus.CLEARED) == 0 ? PAYOUT_FAILED : PARTIALLY_COMPLETED;
+                        yield effects()
+                            .updateState(state.withStatus(status, null).complete())
+                            .end();
+                    }
+                    case Posting.PostResult.Rejected rejected -> {
+                        txLog.warn(settled.payoutId(), "Payout compensation failed: {}", rejected.reason());
+                        yield effects()
+                            .updateState(settled.withStatus(COMPENSATION_FAILED, rejected.reason()).complete())
+                            .end();
+                    }
+                };
+            })
+            .timeout(stepTimeout);
+
+        Step failoverHandler = step("failover-handler")
+            .asyncCall(() -> {
+                txLog.warn(currentState().payoutId(), "Running payout failed step for payoutId: {}", currentState().payoutId());
+                return CompletableFuture.completedStage("handling failure...");
+            })
+            .andThen(String.class, __ -> {
+                var state = currentState();
+                return switch (state.status()) {
+                    // the source may have been debited, find out before giving up on the payout
+                    case POSTING_PAYOUT -> effects()
+                        .updateState(state.withStatus(RESOLVING_POSTING, null))
+                        .transitionTo("resolve-posting");
+                    // the source has been debited, every credit not cleared is refunded
+                    case CLEARING_PAYOUT -> effects()
+                        .updateState(state.withStatus(COMPENSATING, null))
+                        .transitionTo("compensate");
+                    // money may have moved and could not be accounted for, left for manual repair
+                    case RESOLVING_POSTING, COMPENSATING -> effects()
+                        .updateState(state.withStatus(COMPENSATION_FAILED, "Step failed in " + state.status()).complete())
+                        .end();
+                    default -> effects()
+                        .updateState(state.withStatus(PAYOUT_FAILED, "Step failed in " + state.status()).complete())
+                        .end();
+                };
+            })
+            .timeout(ofSeconds(1));
+
+        return workflow()
+            .timeout(workflowTimeout)
+            .defaultStepTimeout(stepTimeout)
+            .failoverTo("failover-handler", maxRetries(0))
+            .defaultStepRecoverStrategy(maxRetries(1).failoverTo("failover-handler"))
+            .addStep(validation)
+            .addStep(posting, maxRetries(2).failoverTo("failover-handler"))
+            .addStep(resolvePosting, maxRetries(2).failoverTo("failover-handler"))
+            .addStep(clearing, maxRetries(2).failoverTo("failover-handler"))
+            .addStep(compensate, maxRetries(2).failoverTo("failover-handler"))
+            .addStep(failoverHandler);
+    }
+
+    public Effect<Payout.Response> process(Payout.Request request) {
+        var payoutId = commandContext().workflowId();
+        var current = currentState();
+
+        if (current != null) {
+            return effects().reply(new Processing(payoutId, current.status().name(), "Duplicate Request: Payout already handled."));
+        }
+        if (request.recipients() == null || request.recipients().isEmpty()) {
+            return effects().error("Payout has no recipients");
+        }
+
+        var initialized = State.from(payoutId, request, Tracing.start()).withStatus(VALIDATING_RECIPIENTS, null);
+        return effects()
+            .updateState(initialized)
+            .transitionTo("validate-recipients")
+            .thenReply(new Received(payoutId, initialized.status().name(), initialized.started()));
+    }
+
+    public Effect<State> get() {
+        if (currentState() == null) {
+            return effects().error("payout not started");
+        } else {
+            return effects().reply(currentState());
+        }
+    }
+
+    // null when the recipient may be paid, otherwise why not; an error fails the step, which the runtime retries
+    private CompletionStage<String> check(State state, State.Credit credit) {
+        var validate = new Validate.Transaction(credit.txId(), state.from(), credit.to(), credit.amount());
+        return Validation.validateDestination(validate, client, state.trace())
+            .thenCompose(validation -> switch (validation) {
+                case ValidationResult.Rejected rejected -> CompletableFuture.completedStage(rejected.reason());
+                case ValidationResult.Approved __ -> Sanction.check(new Check.Accounts(credit.txId(), state.from(), credit.to()))
+                    .thenApply(sanction -> switch (sanction) {
+                        case SanctionResult.Rejected rejected -> rejected.reason();
+                        case SanctionResult.Approved ___ -> null;
+                    });
+            });
+    }
+
+    // null when the credit was applied or is not part of the payout, otherwise why it was rejected;
+    // an error leaves the outcome unknown, so it fails the step and the credit is retried under the same txId
+    private CompletionStage<String> clear(State state, State.Credit credit) {
+        if (credit.status() != CreditStatus.APPROVED) return CompletableFuture.completedStage(null);
+        return Clearing.clear(new Clearing.Clear.Funds(credit.txId(), credit.to(), credit.amount()), client, state.trace())
+            .thenApply(result -> switch (result) {
+                case Clearing.ClearingResult.Accepted __ -> null;
+                case Clearing.ClearingResult.Rejected rejected -> rejected.reason();
+            });
+    }
+
+    // null when the credit was applied or is not part of the payout, otherwise why it is refunded
+    private CompletionStage<String> settle(State state, State.Credit credit) {
+        if (credit.status() != CreditStatus.APPROVED) return CompletableFuture.completedStage(null);
+        return fence(credit.to(), Account.Kind.DEPOSIT, credit.txId())
+            .thenApply(applied -> applied ? null : "Credit was not applied");
+    }
+
+    private CompletionStage<Boolean> fence(String account, Account.Kind kind, String txId) {
+        return client.forEventSourcedEntity(account)
+            .method(Account::fence)
+            .invokeAsync(new Account.Command.Fence(kind, txId));
+    }
+
+    public record State(
+        String payoutId,
+        String processId,
+        String from,
+        List<Credit> credits,
+        Status status,
+        String reason,
+        Long started,
+        Long ended,
+        Tracing.TraceContext trace
+    ) {
+
+        // keeps the payout's movements apart from transfers, whose txIds are chosen by the caller
+        static final String TX_PREFIX = "payout:";
+
+        public record Credit(String txId, String to, int amount, CreditStatus status, String reason) {
+
+            Credit with(CreditStatus status, String reason) {
+                return new Credit(txId, to, amount, status, reason);
+            }
+
+        }
+
+        public enum CreditStatus {
+            PENDING,
+            REJECTED,
+            APPROVED,
+            CLEARED,
+            FAILED,
+            REVERSED
+        }
+
+        public enum Status {
+            VALIDATING_RECIPIENTS,
+            VALIDATION_FAILED,
+            POSTING_PAYOUT,
+            RESOLVING_POSTING,
+            POSTING_FAILED,
+            CLEARING_PAYOUT,
+            COMPENSATING,
+            PAYOUT_COMPLETED,
+            PARTIALLY_COMPLETED,
+            PAYOUT_FAILED,
+            COMPENSATION_FAILED;
+
+            public boolean isTerminal() {
+                return switch (this) {
+                    case VALIDATION_FAILED, POSTING_FAILED, PAYOUT_COMPLETED, PARTIALLY_COMPLETED,
+                         PAYOUT_FAILED, COMPENSATION_FAILED -> true;
+                    default -> false;
+                };
+            }
+        }
+
+        public static State from(String payoutId, Payout.Request request, Tracing.TraceContext trace) {
+            var credits = IntStream.range(0, request.recipients().size())
+                .mapToObj(i -> {
+                    var recipient = request.recipients().get(i);
+                    return new Credit(TX_PREFIX + payoutId + ":" + i, recipient.to(), recipient.amount(), CreditStatus.PENDING, null);
+                })
+                .toList();
+            return new State(payoutId, request.processId(), request.from(), credits, VALIDATING_RECIPIENTS, null,
+                System.currentTimeMillis(), 0L, trace);
+        }
+
+        // txId of the posting; payouts whose credits predate the prefix keep the bare payoutId they were posted under
+        String postingTxId() {
+            return legacy() ? payoutId : TX_PREFIX + payoutId;
+        }
+
+        String reversalTxId(long reversed) {
+            return legacy() ? payoutId + "-reversal-" + reversed : TX_PREFIX + payoutId + ":reversal:" + reversed;
+        }
+
+        private boolean legacy() {
+            return !credits.get(0).txId().startsWith(TX_PREFIX);
+        }
+
+        public State withStatus(Status newStatus, String newReason) {
+            return new State(payoutId, processId, from, credits, newStatus, newReason, started, ended, trace);
+        }
+
+        public State complete() {
+            return new State(payoutId, processId, from, credits, status, reason, started, System.currentTimeMillis(), trace);
+        }
+
+        State validated(List<String> rejections) {
+            return withCredits(rejections, CreditStatus.PENDING, CreditStatus.APPROVED, CreditStatus.REJECTED);
+        }
+
+        State cleared(List<String> failures) {
+            return withCredits(failures, CreditStatus.APPROVED, CreditStatus.CLEARED, CreditStatus.FAILED);
+        }
+
+        State reversed() {
+            var updated = credits.stream()
+                .map(credit -> credit.status() == CreditStatus.FAILED ? credit.with(CreditStatus.REVERSED, credit.reason()) : credit)
+                .toList();
+            return new State(payoutId, processId, from, updated, status, reason, started, ended, trace);
+        }
+
+        // moves every credit in the given status on, to rejected when it has a reason and approved otherwise
+        private State withCredits(List<String> reasons, CreditStatus from, CreditStatus approved, CreditStatus rejected) {
+            var updated = new ArrayList<Credit>(credits.size());
+            for (int i = 0; i < credits.size(); i++) {
+                var credit = credits.get(i);
+                var reason = reasons.get(i);
+                updated.add(credit.status() != from ? credit : reason == null ? credit.with(approved, null) : credit.with(rejected, reason));
+            }
+            return new State(payoutId, processId, this.from, updated, status, this.reason, started, ended, trace);
+        }
+
+        public int total(CreditStatus creditStatus) {
+            return credits.stream().filter(credit -> credit.status() == creditStatus).mapToInt(Credit::amount).sum();
+        }
+
+        public long count(CreditStatus creditStatus) {
+            return credits.stream().filter(credit -> credit.status() == creditStatus).count();
+        }
+
+        @Override
+        public Tracing.TraceContext trace() {
+            return trace == null ? Tracing.TraceContext.NONE : trace;
+        }
+
+    }
+
+}
@@ -0,0 +1,32 @@
+package com.example.payout.domain;
+
+import com.fasterxml.jackson.annotation.JsonSubTypes;
+import com.fasterxml.jackson.annotation.JsonTypeInfo;
+
+import java.util.List;
+
+@JsonTypeInfo(use = JsonTypeInfo.Id.NAME, property = "type")
+@JsonSubTypes({
+    @JsonSubTypes.Type(value = Payout.Request.class, name = "request"),
+    @JsonSubTypes.Type(value = Payout.Response.Received.class, name = "received"),
+    @JsonSubTypes.Type(value = Payout.Response.Processing.class, name = "processing")
+})
+public sealed interface Payout {
+
+    /**
+     * A one-to-many payment, such as a payroll run: one source account paying each recipient
+     * its amount.
+     */
+    record Request(String processId, String from, List<Recipient> recipients) implements Payout {}
+
+    record Recipient(String to, int amount) {}
+
+    sealed interface Response extends Payout {
+
+        record Received(String payoutId, String status, Long received) implements Response {}
+
+        record Processing(String payoutId, String status, String message) implements Response {}
+
+    }
+
+}
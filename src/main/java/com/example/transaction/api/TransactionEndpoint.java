@@ -1,33 +1,66 @@
 package com.example.transaction.api;
 
+import akka.http.javadsl.model.ContentTypes;
+import akka.http.javadsl.model.HttpResponse;
+import akka.http.javadsl.model.StatusCodes;
+import akka.http.javadsl.model.headers.ETag;
+import akka.http.javadsl.model.headers.EntityTag;
 import akka.javasdk.annotations.Acl;
 import akka.javasdk.annotations.http.Get;
 import akka.javasdk.annotations.http.HttpEndpoint;
 import akka.javasdk.annotations.http.Post;
 import akka.javasdk.client.ComponentClient;
+import akka.javasdk.http.HttpResponses;
+import akka.javasdk.http.RequestContext;
+import com.example.transaction.application.OpenTransactionsView;
+import com.example.transaction.application.PaymentLanes;
+import com.example.transaction.application.RecentRequests;
+import com.example.transaction.application.ScheduledPayment;
+import com.example.transaction.application.StepTimeouts;
+import com.example.transaction.application.StepTimings;
+import com.example.transaction.application.TerminalStates;
 import com.example.transaction.application.TransactionLogger;
+import com.example.transaction.application.TransactionSweeper;
 import com.example.transaction.domain.Transaction;
 import com.example.transaction.application.TransactionWorkflow;
+import com.example.util.EdgeLimits;
+import com.example.util.Parallel;
+import com.example.util.Validator;
+import com.typesafe.config.ConfigFactory;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.CompletionStage;
 
+import static com.example.util.Validator.isFutureDate;
+
 @HttpEndpoint("/transaction")
 @Acl(allow = @Acl.Matcher(principal = Acl.Principal.INTERNET))
 public class TransactionEndpoint {
 
     private static final Logger log = LoggerFactory.getLogger(TransactionEndpoint.class);
 
+    private static final int maxBatchSize = ConfigFactory.load().getInt("payment.batch.max-size");
+    private static final int maxBatchParallel = ConfigFactory.load().getInt("payment.batch.max-parallel");
+
+    private static final String SCHEDULED = "SCHEDULED";
+
     private final ComponentClient client;
+    private final RequestContext context;
 
-    public TransactionEndpoint(ComponentClient client) {
+    public TransactionEndpoint(ComponentClient client, RequestContext context) {
         this.client = client;
+        this.context = context;
     }
 
     @Get("/summary/{processId}")
-    public CompletionStage<TransactionLogger.State> getTransactionSummary(String processId) {
-        log.info("Get process overview with id [{}].", processId);
+    public CompletionStage<TransactionLogger.Summary> getTransactionSummary(String processId) {
+        log.debug("Get process overview with id [{}].", processId);
         return client
             .forKeyValueEntity(processId)
             .method(TransactionLogger::get)
@@ -35,24 +68,237 @@ public class TransactionEndpoint {
             .thenApply(summary -> summary);
     }
 
+    /**
+     * Finished transactions are served from the terminal state cache once read. Every response
+     * carries an ETag, and a request whose If-None-Match matches it gets a 304.
+     */
     @Get("/{txId}")
-    public CompletionStage<TransactionWorkflow.State> getTransaction(String txId) {
-        log.info("Get transaction with id [{}].", txId);
+    public CompletionStage<HttpResponse> getTransaction(String txId) {
+        log.debug("Get transaction with id [{}].", txId);
+        var cached = TerminalStates.get(txId);
+        if (cached.isPresent()) return CompletableFuture.completedFuture(conditional(cached.get()));
+        return client
+            .forWorkflow(txId)
+            .method(TransactionWorkflow::get)
+            .invokeAsync()
+            .thenApply(state -> {
+                TerminalStates.offer(state);
+                return conditional(state);
+            });
+    }
+
+    private HttpResponse conditional(TransactionWorkflow.State state) {
+        var etag = ETag.create(EntityTag.create(TerminalStates.etag(state), false));
+        var unchanged = context.requestHeader("If-None-Match")
+            .map(header -> Arrays.stream(header.value().split(","))
+                .map(String::trim)
+                .anyMatch(tag -> tag.equals("*") || tag.equals(etag.value()) || tag.equals("W/" + etag.value())))
+            .orElse(false);
+        return unchanged
+            ? HttpResponse.create().withStatus(StatusCodes.NOT_MODIFIED).addHeader(etag)
+            : HttpResponses.ok(state).addHeader(etag);
+    }
+
+    @Get("/{txId}/timing")
+    public CompletionStage<TransactionWorkflow.State.Timing> getTransactionTiming(String txId) {
+        log.debug("Get transaction timing with id [{}].", txId);
         return client
             .forWorkflow(txId)
             .method(TransactionWorkflow::get)
             .invokeAsync()
-            .thenApply(state -> state);
+            .thenApply(TransactionWorkflow.State::timing);
     }
 
+    @Get("/steps/latency")
+    public List<StepTimings.StepLatency> getStepLatencies() {
+        return StepTimings.latencies();
+    }
+
+    @Get("/steps/timeouts")
+    public List<StepTimeouts.StepTimeout> getStepTimeouts() {
+        return StepTimeouts.timeouts();
+    }
+
+    /**
+     * Transactions that have made no progress in the given status for longer than the sweeper's
+     * stuck-after, longest stuck first; the sweeper recovers them in batches.
+     */
+    @Get("/stuck/{status}")
+    public CompletionStage<OpenTransactionsView.OpenTransactions> getStuckTransactions(String status) {
+        return client.forView()
+            .method(OpenTransactionsView::stuckByStatus)
+            .invokeAsync(TransactionSweeper.stuckIn(status, 1000));
+    }
+
+    /**
+     * Payments are admitted through the lane of their priority first, so bulk payments wait for
+     * spare capacity instead of queueing in front of instant ones. A payment refused by its lane
+     * gets a 503 and can be retried with the same txId. Before that, requests over the rate
+     * limits of their processId or client, or over the endpoint's concurrency limit, get a 429.
+     * A retry of a payment recently started on this node is answered straight away, and a txId
+     * reused for a different payment gets a 409.
+     */
     @Post("/{txId}/process")
-    public CompletionStage<Transaction.Response> process(String txId, Transaction.Request request) {
-        log.info("Process transaction with id [{}].", txId);
+    public CompletionStage<HttpResponse> process(String txId, Transaction.Request request) {
+        log.debug("Process transaction with id [{}].", txId);
+        return switch (RecentRequests.lookup(txId, request)) {
+            case RecentRequests.Lookup.Duplicate duplicate -> CompletableFuture.completedFuture(HttpResponses.ok(duplicate.response()));
+            case RecentRequests.Lookup.Conflict conflict -> CompletableFuture.completedFuture(
+                HttpResponses.of(StatusCodes.CONFLICT, ContentTypes.TEXT_PLAIN_UTF8, conflict.message().getBytes(StandardCharsets.UTF_8))
+            );
+            case RecentRequests.Lookup.Miss miss ->
+                EdgeLimits.guard("transaction", context, request.processId(), () -> startOrSchedule(txId, request)
+                    .thenApply(HttpResponses::ok)
+                    .exceptionally(ex -> {
+                        if (ex.getCause() instanceof PaymentLanes.Refused refused) {
+                            return HttpResponses.serviceUnavailable(refused.getMessage());
+                        }
+                        if (ex.getCause() instanceof IllegalArgumentException invalid) {
+                            return HttpResponses.badRequest(invalid.getMessage());
+                        }
+                        throw ex instanceof CompletionException completion ? completion : new CompletionException(ex);
+                    }));
+        };
+    }
+
+    /**
+     * Submits many payments in one request, for high-volume callers. Submissions are flat, with
+     * no type information, and are started at most max-parallel at a time, each going through
+     * the same duplicate detection, processId and client rate limits and lanes as a single
+     * payment, so a batch costs its caller one token per submission. The reply holds one
+     * acknowledgement per submission, in order, with the HTTP status the payment would have got
+     * on its own.
+     */
+    @Post("/batch")
+    public CompletionStage<HttpResponse> processBatch(Batch batch) {
+        log.debug("Process batch of [{}] transactions.", batch.submissions().size());
+        if (batch.submissions().size() > maxBatchSize) {
+            return CompletableFuture.completedFuture(HttpResponses.badRequest("Batch larger than " + maxBatchSize + " submissions"));
+        }
+        return EdgeLimits.guardBatch("transaction-batch", () ->
+            Parallel.map(batch.submissions(), maxBatchParallel, this::submit).thenApply(HttpResponses::ok)
+        );
+    }
+
+    /**
+     * Reads the status of many transactions at once; finished ones come from the terminal state
+     * cache, the rest are read at most max-parallel at a time. Callers poll it for the payments
+     * they submitted until all are terminal.
+     */
+    @Post("/batch/status")
+    public CompletionStage<HttpResponse> getBatchStatus(StatusQuery query) {
+        log.debug("Get status of [{}] transactions.", query.txIds().size());
+        if (query.txIds().size() > maxBatchSize) {
+            return CompletableFuture.completedFuture(HttpResponses.badRequest("Query larger than " + maxBatchSize + " transactions"));
+        }
+        return EdgeLimits.guard("transaction-batch-status", context, null, () ->
+            Parallel.map(query.txIds(), maxBatchParallel, this::status).thenApply(HttpResponses::ok)
+        );
+    }
+
+    public record Batch(List<Submission> submissions) {}
+
+    public record Submission(
+        String txId, String processId, String from, String to, int amount, Long deadline, Transaction.Priority priority, Long executeAt) {
+
+        Transaction.Request request() {
+            return new Transaction.Request(processId, from, to, amount, deadline, priority, executeAt);
+        }
+
+    }
+
+    public record Ack(String txId, int code, String status, String message) {}
+
+    public record StatusQuery(List<String> txIds) {}
+
+    public record TxStatus(String txId, String status, boolean terminal) {}
+
+    private CompletionStage<Ack> submit(Submission submission) {
+        var txId = submission.txId();
+        var request = submission.request();
+        return switch (RecentRequests.lookup(txId, request)) {
+            case RecentRequests.Lookup.Duplicate duplicate -> CompletableFuture.completedFuture(ack(txId, duplicate.response()));
+            case RecentRequests.Lookup.Conflict conflict -> CompletableFuture.completedFuture(new Ack(txId, 409, null, conflict.message()));
+            case RecentRequests.Lookup.Miss miss -> {
+                var limited = EdgeLimits.tryAcquire("transaction-batch", context, request.processId());
+                if (limited != null) {
+                    yield CompletableFuture.completedFuture(
+                        new Ack(txId, 429, null, limited.message() + ", retry after " + limited.retryAfterSeconds() + "s")
+                    );
+                }
+                yield startOrSchedule(txId, request)
+                    .thenApply(response -> ack(txId, response))
+                    .exceptionally(ex -> switch (ex.getCause()) {
+                        case PaymentLanes.Refused refused -> new Ack(txId, 503, null, refused.getMessage());
+                        case IllegalArgumentException invalid -> new Ack(txId, 400, null, invalid.getMessage());
+                        case null, default -> new Ack(txId, 500, null, "Transaction failed.");
+                    });
+            }
+        };
+    }
+
+    private static Ack ack(String txId, Transaction.Response response) {
+        return switch (response) {
+            case Transaction.Response.Received received -> new Ack(txId, 200, received.status(), null);
+            case Transaction.Response.Processing processing -> new Ack(txId, 200, processing.status(), processing.message());
+        };
+    }
+
+    private CompletionStage<TxStatus> status(String txId) {
+        var cached = TerminalStates.get(txId);
+        if (cached.isPresent()) return CompletableFuture.completedFuture(new TxStatus(txId, cached.get().status().name(), true));
         return client
             .forWorkflow(txId)
-            .method(TransactionWorkflow::process)
-            .invokeAsync(request)
-            .thenApply(response -> response);
+            .method(TransactionWorkflow::get)
+            .invokeAsync()
+            .thenApply(state -> {
+                TerminalStates.offer(state);
+                return new TxStatus(txId, state.status().name(), state.status().isTerminal());
+            })
+            .exceptionally(ex -> new TxStatus(txId, null, false));
+    }
+
+    /**
+     * Starts the payment, or stores it to be started later when it is dated ahead. A payment
+     * dated beyond the scheduling horizon fails with {@link IllegalArgumentException}.
+     */
+    private CompletionStage<Transaction.Response> startOrSchedule(String txId, Transaction.Request request) {
+        if (!ScheduledPayment.isScheduled(request)) return start(txId, request);
+        var now = System.currentTimeMillis();
+        return Validator
+            .validate(
+                isFutureDate(request.executeAt(), 0L, now + ScheduledPayment.maxHorizonMillis(), "Execution date is beyond the scheduling horizon")
+            )
+            .handle((result, err) -> switch (result) {
+                case SUCCESS -> client
+                    .forKeyValueEntity(txId)
+                    .method(ScheduledPayment::schedule)
+                    .invokeAsync(request)
+                    .thenApply(__ -> {
+                        var received = new Transaction.Response.Received(txId, SCHEDULED, now);
+                        RecentRequests.accepted(txId, request, received);
+                        return (Transaction.Response) received;
+                    });
+                case ERROR -> CompletableFuture.<Transaction.Response>failedFuture(new IllegalArgumentException(err));
+            });
+    }
+
+    /**
+     * Admits the payment through its lane and starts its workflow; fails with
+     * {@link PaymentLanes.Refused} when the lane refuses it.
+     */
+    private CompletionStage<Transaction.Response> start(String txId, Transaction.Request request) {
+        return PaymentLanes.admit(txId, request.priority())
+            .thenCompose(held -> client
+                .forWorkflow(txId)
+                .method(TransactionWorkflow::process)
+                .invokeAsync(request)
+                .whenComplete((response, ex) -> {
+                    if (response instanceof Transaction.Response.Received received) {
+                        RecentRequests.accepted(txId, request, received);
+                    }
+                    if (held) PaymentLanes.release(txId);
+                }));
     }
 
 }
@@ -0,0 +1,72 @@
+package com.example.transaction.application;
+
+import com.example.transaction.application.TransactionWorkflow.State;
+import com.example.transaction.application.TransactionWorkflow.State.StepId;
+import com.example.util.Metrics;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+public class Deadlines {
+
+    /**
+     * Deadlines enforces a payment's deadline on its workflow steps.
+     *
+     * Before a step's remote call starts, the time left is checked; once the deadline has passed
+     * the call is not made and the step completes with its rejected result instead, so the
+     * workflow ends, or compensates if funds were already posted.
+     *
+     * Read-only calls are also bounded by the time left, and a call still running at the deadline
+     * is abandoned in favour of the rejected result. Calls that move money are never abandoned,
+     * as their outcome must be known before the workflow can decide whether to compensate.
+     *
+     */
+
+    public static final String EXCEEDED = "Deadline Exceeded";
+
+    private static final Map<StepId, LongAdder> exceeded = new EnumMap<>(StepId.class);
+
+    static {
+        for (StepId step : StepId.values()) {
+            exceeded.put(step, Metrics.counter(
+                "payment_deadline_exceeded_total", "Workflow steps skipped or abandoned because the payment deadline passed.",
+                "step", step.name()));
+        }
+    }
+
+    /**
+     * Starts the call only if the deadline has not passed.
+     */
+    public static <T> CompletionStage<T> guard(State state, StepId step, Supplier<CompletionStage<T>> call, Supplier<T> rejected) {
+        if (state.remaining() > 0) return call.get();
+        exceeded.get(step).increment();
+        return CompletableFuture.completedFuture(rejected.get());
+    }
+
+    /**
+     * Starts the call only if the deadline has not passed, and gives it only the time remaining.
+     * For read-only calls, whose result can be discarded.
+     */
+    public static <T> CompletionStage<T> bound(State state, StepId step, Supplier<CompletionStage<T>> call, Supplier<T> rejected) {
+        var remaining = state.remaining();
+        if (remaining == Long.MAX_VALUE) return call.get();
+        if (remaining <= 0) {
+            exceeded.get(step).increment();
+            return CompletableFuture.completedFuture(rejected.get());
+        }
+        return call.get()
+            .toCompletableFuture()
+            .orTimeout(remaining, TimeUnit.MILLISECONDS)
+            .exceptionallyCompose(ex -> {
+                if (state.remaining() > 0) return CompletableFuture.failedFuture(ex);
+                exceeded.get(step).increment();
+                return CompletableFuture.completedFuture(rejected.get());
+            });
+    }
+
+}
@@ -0,0 +1,116 @@
+package com.example.transaction.application;
+
+import akka.Done;
+import akka.javasdk.annotations.ComponentId;
+import akka.javasdk.client.ComponentClient;
+import akka.javasdk.timedaction.TimedAction;
+import akka.javasdk.timer.TimerScheduler;
+import com.example.mock.Clearing;
+import com.example.mock.Posting;
+import com.example.util.Tracing;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+
+@ComponentId("netting-settler")
+public class NettingSettler extends TimedAction {
+
+    /**
+     * NettingSettler closes a netting window when its timer fires and settles it: the transfers
+     * in each direction are offset against each other and only the difference is posted from
+     * the net payer and cleared to the net payee, under the settlement's id so that a retried
+     * settlement moves the money once. Every transfer's workflow is then told the outcome, and
+     * the window marked settled. If transfers are waiting in the next window by then, its timer
+     * is armed again, since it may have fired while this settlement was still in progress.
+     *
+     * Any failure fails the timer call, which the runtime retries; every step is idempotent.
+     *
+     */
+
+    private static final Logger log = LoggerFactory.getLogger(NettingSettler.class);
+
+    /**
+     * Arms the timer that closes and settles a window; a window has a single timer, so arming it
+     * again moves it.
+     */
+    public static CompletionStage<Done> schedule(TimerScheduler timers, ComponentClient client, String pair, long window, Duration delay) {
+        return timers.startSingleTimer(
+            "netting-" + pair + "-" + window,
+            delay,
+            client.forTimedAction().method(NettingSettler::settle).deferred(pair)
+        );
+    }
+
+    private final ComponentClient client;
+
+    public NettingSettler(ComponentClient client) {
+        this.client = client;
+    }
+
+    public Effect settle(String pair) {
+        return effects().asyncDone(
+            client.forKeyValueEntity(pair)
+                .method(NettingWindow::close)
+                .invokeAsync()
+                .thenCompose(settlement -> settlement.entries().isEmpty()
+                    ? CompletableFuture.completedStage(Done.getInstance())
+                    : net(settlement)
+                        .thenCompose(result -> notify(settlement, result))
+                        .thenCompose(__ -> client.forKeyValueEntity(pair)
+                            .method(NettingWindow::settled)
+                            .invokeAsync(settlement.settlementId()))
+                        .thenCompose(remaining -> remaining.pending() == 0
+                            ? CompletableFuture.completedStage(Done.getInstance())
+                            : schedule(timers(), client, pair, remaining.window(),
+                                Duration.ofMillis(Math.max(0, remaining.closesAt() - System.currentTimeMillis())))))
+        );
+    }
+
+    private CompletionStage<TransactionWorkflow.NettingResult> net(NettingWindow.Settlement settlement) {
+        var first = settlement.entries().getFirst();
+        var a = first.from();
+        var b = first.to();
+        // positive when a owes b overall
+        var net = settlement.entries().stream().mapToInt(entry -> entry.from().equals(a) ? entry.amount() : -entry.amount()).sum();
+        log.info("Settling [{}]: [{}] transfers netted to [{}] from [{}] to [{}].",
+            settlement.settlementId(), settlement.entries().size(), Math.abs(net), net >= 0 ? a : b, net >= 0 ? b : a);
+        if (net == 0) return CompletableFuture.completedStage(TransactionWorkflow.NettingResult.settled(settlement.settlementId()));
+
+        var payer = net > 0 ? a : b;
+        var payee = net > 0 ? b : a;
+        var amount = Math.abs(net);
+        var id = settlement.settlementId();
+        return Posting.post(new Posting.Post.Funds(id, payer, amount), client, Tracing.TraceContext.NONE)
+            .thenCompose(posted -> switch (posted) {
+                case Posting.PostResult.Rejected rejected ->
+                    CompletableFuture.completedStage(TransactionWorkflow.NettingResult.failed(id, "Net posting rejected: " + rejected.reason()));
+                case Posting.PostResult.Approved __ -> Clearing.clear(new Clearing.Clear.Funds(id, payee, amount), client, Tracing.TraceContext.NONE)
+                    .thenCompose(cleared -> switch (cleared) {
+                        case Clearing.ClearingResult.Accepted ___ ->
+                            CompletableFuture.completedStage(TransactionWorkflow.NettingResult.settled(id));
+                        case Clearing.ClearingResult.Rejected rejected ->
+                            Posting.reversal(new Posting.Post.Reversal(id + "-reversal", payer, amount), client, Tracing.TraceContext.NONE)
+                                .thenApply(reversed -> switch (reversed) {
+                                    case Posting.PostResult.Approved ____ ->
+                                        TransactionWorkflow.NettingResult.failed(id, "Net clearing rejected: " + rejected.reason());
+                                    case Posting.PostResult.Rejected reversalRejected ->
+                                        throw new IllegalStateException("Net reversal of " + id + " rejected: " + reversalRejected.reason());
+                                });
+                    });
+            });
+    }
+
+    private CompletionStage<Void> notify(NettingWindow.Settlement settlement, TransactionWorkflow.NettingResult result) {
+        var calls = settlement.entries().stream()
+            .map(entry -> client.forWorkflow(entry.txId())
+                .method(TransactionWorkflow::netted)
+                .invokeAsync(result)
+                .toCompletableFuture())
+            .toArray(CompletableFuture[]::new);
+        return CompletableFuture.allOf(calls);
+    }
+
+}
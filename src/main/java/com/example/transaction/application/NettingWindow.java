@@ -0,0 +1,180 @@
+package com.example.transaction.application;
+
+import akka.javasdk.annotations.ComponentId;
+import akka.javasdk.keyvalueentity.KeyValueEntity;
+import com.typesafe.config.Config;
+import com.typesafe.config.ConfigFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+@ComponentId("netting-window")
+public class NettingWindow extends KeyValueEntity<NettingWindow.State> {
+
+    /**
+     * NettingWindow collects the transfers between one pair of accounts, in either direction,
+     * while a netting window is open, so they can be settled as one net posting and clearing.
+     *
+     * The entity is keyed by the pair, whichever way round the transfer goes. The first transfer
+     * added to a window schedules {@link NettingSettler} to close it after the window duration;
+     * closing moves the collected transfers into a settlement, which the entity holds on to until
+     * it is marked settled so that a settlement retried after a failure sees the same transfers.
+     * Transfers arriving meanwhile go into the next window.
+     *
+     * A window also closes once it holds max-entries transfers: the transfer that fills it asks
+     * for the window to be closed straight away, and transfers that find it full are refused and
+     * settled on their own. This keeps the state, which is rewritten on every add, bounded.
+     *
+     * A transfer still in the open window can be withdrawn, for a workflow that gives up on
+     * netting before the window closes; once the window has closed it settles with it.
+     *
+     * Netting applies only to the processIds listed under payment.netting in application.conf.
+     *
+     */
+
+    private static final Logger log = LoggerFactory.getLogger(NettingWindow.class);
+
+    private static final Config config = ConfigFactory.load().getConfig("payment.netting");
+    private static final Set<String> processIds = Set.copyOf(config.getStringList("process-ids"));
+    private static final Duration window = config.getDuration("window");
+    private static final int maxEntries = config.getInt("max-entries");
+
+    public static boolean nets(String processId) {
+        return processIds.contains(processId);
+    }
+
+    public static Duration window() {
+        return window;
+    }
+
+    /**
+     * The entity id of the window for transfers between two accounts, in either direction.
+     */
+    public static String pair(String from, String to) {
+        return from.compareTo(to) <= 0 ? from + "|" + to : to + "|" + from;
+    }
+
+    @Override
+    public State emptyState() { return State.emptyState(); }
+
+    public Effect<Added> add(Entry entry) {
+        var current = currentState();
+        if (current.contains(entry.txId())) {
+            return effects().reply(new Added(current.window(), current.isFirst(entry.txId()), true, current.isFull()));
+        }
+        if (current.isFull()) {
+            return effects().reply(new Added(current.window(), false, false, true));
+        }
+        log.debug("Adding [{}] to netting window [{}] of [{}].", entry.txId(), current.window(), commandContext().entityId());
+        var updated = current.add(entry, System.currentTimeMillis());
+        return effects()
+            .updateState(updated)
+            .thenReply(new Added(updated.window(), updated.isFirst(entry.txId()), true, updated.isFull()));
+    }
+
+    /**
+     * Takes the transfer out of the open window. A transfer already in the settlement in
+     * progress cannot be withdrawn and settles with it.
+     */
+    public Effect<Withdrawal> withdraw(String txId) {
+        var current = currentState();
+        if (current.settling() != null && current.settling().entries().stream().anyMatch(entry -> entry.txId().equals(txId))) {
+            return effects().reply(Withdrawal.SETTLING);
+        }
+        var remaining = current.pending().stream().filter(entry -> !entry.txId().equals(txId)).toList();
+        if (remaining.size() == current.pending().size()) return effects().reply(Withdrawal.ABSENT);
+        log.debug("Withdrawing [{}] from netting window [{}] of [{}].", txId, current.window(), commandContext().entityId());
+        return effects()
+            .updateState(new State(current.window(), remaining, current.settling(), remaining.isEmpty() ? null : current.opened()))
+            .thenReply(Withdrawal.WITHDRAWN);
+    }
+
+    /**
+     * Closes the open window into a settlement, or returns the settlement still in progress. The
+     * settlement is empty when there was nothing to settle.
+     */
+    public Effect<Settlement> close() {
+        var current = currentState();
+        if (current.settling() != null) return effects().reply(current.settling());
+        if (current.pending().isEmpty()) return effects().reply(Settlement.EMPTY);
+        var settlement = new Settlement(commandContext().entityId() + "-" + current.window(), current.pending());
+        return effects()
+            .updateState(new State(current.window() + 1, List.of(), settlement, null))
+            .thenReply(settlement);
+    }
+
+    /**
+     * Marks the settlement done and replies with the open window, whose timer may have fired
+     * while the settlement was still in progress.
+     */
+    public Effect<Remaining> settled(String settlementId) {
+        var current = currentState();
+        if (current.settling() == null || !current.settling().settlementId().equals(settlementId)) {
+            return effects().reply(current.remaining());
+        }
+        var updated = new State(current.window(), current.pending(), null, current.opened());
+        return effects()
+            .updateState(updated)
+            .thenReply(updated.remaining());
+    }
+
+    public record Entry(String txId, String from, String to, int amount) {}
+
+    /**
+     * A transfer that was not accepted found the window full and settles on its own; one that
+     * filled the window asks for it to be closed straight away.
+     */
+    public record Added(long window, boolean first, boolean accepted, boolean full) {}
+
+    public enum Withdrawal {
+        WITHDRAWN,
+        SETTLING,
+        ABSENT
+    }
+
+    public record Remaining(long window, int pending, long closesAt) {}
+
+    public record Settlement(String settlementId, List<Entry> entries) {
+
+        public static final Settlement EMPTY = new Settlement("", List.of());
+
+    }
+
+    public record State(long window, List<Entry> pending, Settlement settling, Long opened) {
+
+        public static State emptyState() {
+            return new State(0L, List.of(), null, null);
+        }
+
+        boolean contains(String txId) {
+            return pending.stream().anyMatch(entry -> entry.txId().equals(txId))
+                || settling != null && settling.entries().stream().anyMatch(entry -> entry.txId().equals(txId));
+        }
+
+        boolean isFirst(String txId) {
+            return !pending.isEmpty() && pending.getFirst().txId().equals(txId);
+        }
+
+        boolean isFull() {
+            return pending.size() >= maxEntries;
+        }
+
+        Remaining remaining() {
+            var closesAt = opened == null ? System.currentTimeMillis() : opened + NettingWindow.window.toMillis();
+            return new Remaining(window, pending.size(), closesAt);
+        }
+
+        State add(Entry entry, long now) {
+            var updated = new ArrayList<Entry>(pending.size() + 1);
+            updated.addAll(pending);
+            updated.add(entry);
+            return new State(window, updated, settling, pending.isEmpty() ? now : opened);
+        }
+
+    }
+
+}
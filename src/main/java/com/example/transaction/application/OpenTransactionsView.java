@@ -0,0 +1,75 @@
+package com.example.transaction.application;
+
+import akka.javasdk.annotations.ComponentId;
+import akka.javasdk.annotations.Consume;
+import akka.javasdk.annotations.Query;
+import akka.javasdk.annotations.Table;
+import akka.javasdk.view.TableUpdater;
+import akka.javasdk.view.View;
+
+import java.util.List;
+
+@ComponentId("open-transactions")
+public class OpenTransactionsView extends View {
+
+    /**
+     * OpenTransactionsView indexes the transactions whose workflow has not finished, by status
+     * and by when they last made progress, so that {@link TransactionSweeper} can find the ones
+     * that are stuck. A row is removed as soon as its workflow reaches a terminal status.
+     * Transfers awaiting netting stay indexed, so one whose settlement never reports back is
+     * reconciled against its {@link NettingWindow}.
+     *
+     */
+
+    @Table("open_transactions")
+    @Consume.FromWorkflow(TransactionWorkflow.class)
+    public static class OpenTransactionsUpdater extends TableUpdater<OpenTransaction> {
+
+        public Effect<OpenTransaction> onUpdate(TransactionWorkflow.State state) {
+            if (state.status().isTerminal()) {
+                return effects().deleteRow();
+            }
+            return effects().updateRow(
+                new OpenTransaction(
+                    state.txId(),
+                    state.processId(),
+                    state.status().name(),
+                    state.started(),
+                    state.lastFinished()
+                )
+            );
+        }
+
+    }
+
+    @Query("""
+        SELECT * AS transactions
+        FROM open_transactions
+        WHERE updated < :before
+        ORDER BY updated
+        LIMIT :limit
+        """)
+    public QueryEffect<OpenTransactions> stuck(Stuck query) {
+        return queryResult();
+    }
+
+    @Query("""
+        SELECT * AS transactions
+        FROM open_transactions
+        WHERE status = :status AND updated < :before
+        ORDER BY updated
+        LIMIT :limit
+        """)
+    public QueryEffect<OpenTransactions> stuckByStatus(StuckByStatus query) {
+        return queryResult();
+    }
+
+    public record Stuck(long before, int limit) {}
+
+    public record StuckByStatus(String status, long before, int limit) {}
+
+    public record OpenTransaction(String txId, String processId, String status, long started, long updated) {}
+
+    public record OpenTransactions(List<OpenTransaction> transactions) {}
+
+}
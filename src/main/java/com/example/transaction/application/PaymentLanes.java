@@ -0,0 +1,182 @@
+package com.example.transaction.application;
+
+import com.example.transaction.domain.Transaction.Priority;
+import com.example.util.LatencyHistogram;
+import com.example.util.Metrics;
+import com.typesafe.config.Config;
+import com.typesafe.config.ConfigFactory;
+
+import java.util.ArrayDeque;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+public class PaymentLanes {
+
+    /**
+     * PaymentLanes admits payments into the workflow through one lane per {@link Priority}, each
+     * with its own queue, so a large bulk run cannot push out instant payments.
+     *
+     * All lanes share one budget of payments being started on this node. Instant payments may
+     * use all of it; bulk payments only the part left after a reserve kept for instant payments,
+     * and only while no instant payment is waiting. A payment that cannot be admitted waits in
+     * its lane's queue, in order, up to the lane's maximum wait; when the queue is full or the
+     * wait runs out it is refused.
+     *
+     * A payment holds its place from admission until the call starting its workflow completes,
+     * and it is released by the caller that admitted it, on the node that admitted it. The
+     * workflow itself may run on any node, so its terminal status cannot release the place.
+     * A retried payment that is still waiting shares the original's wait rather than queueing
+     * a second time.
+     *
+     * Configured under payment.lanes in application.conf.
+     *
+     */
+
+    private static final Config config = ConfigFactory.load().getConfig("payment.lanes");
+    private static final int capacity = config.getInt("capacity");
+    private static final int bulkLimit = capacity - config.getInt("instant-reserve");
+
+    private static final Map<Priority, Lane> lanes = new EnumMap<>(Priority.class);
+    private static final Set<String> holds = ConcurrentHashMap.newKeySet();
+    private static final Map<String, Waiter> waiting = new HashMap<>();
+    private static int inFlight;
+
+    static {
+        for (Priority priority : Priority.values()) {
+            var key = priority.name().toLowerCase();
+            lanes.put(priority, new Lane(
+                priority,
+                config.getInt("queue-size." + key),
+                config.getDuration("max-wait." + key).toMillis()
+            ));
+        }
+    }
+
+    public static class Refused extends RuntimeException {
+
+        public Refused(Priority priority, String reason) {
+            super("Payment lane " + priority.name().toLowerCase() + " " + reason);
+        }
+
+    }
+
+    /**
+     * Completes when the payment is admitted, or fails with {@link Refused}. Completes with false
+     * when the payment already holds a place, as a retried request does while it is in flight,
+     * and once the original is admitted when the payment is already waiting for one.
+     */
+    public static CompletionStage<Boolean> admit(String txId, Priority priority) {
+        var lane = lanes.get(priority);
+        synchronized (PaymentLanes.class) {
+            if (holds.contains(txId)) return CompletableFuture.completedFuture(false);
+            var queued = waiting.get(txId);
+            if (queued != null) return queued.admitted().thenApply(__ -> false);
+            if (lane.queue.isEmpty() && admissible(priority)) {
+                hold(txId, lane);
+                lane.waited.record(0);
+                return CompletableFuture.completedFuture(true);
+            }
+            if (lane.queue.size() >= lane.queueSize) {
+                lane.refused.increment();
+                return CompletableFuture.failedFuture(new Refused(priority, "queue is full"));
+            }
+            var waiter = new Waiter(txId, System.currentTimeMillis(), new CompletableFuture<>());
+            lane.queue.add(waiter);
+            waiting.put(txId, waiter);
+            CompletableFuture.delayedExecutor(lane.maxWaitMillis, TimeUnit.MILLISECONDS).execute(() -> expire(lane, waiter));
+            return waiter.admitted();
+        }
+    }
+
+    /**
+     * Releases the payment's place, if it holds one, and admits whoever is waiting for it. Only
+     * the caller that was admitted with true releases the place.
+     */
+    public static void release(String txId) {
+        synchronized (PaymentLanes.class) {
+            if (!holds.remove(txId)) return;
+            inFlight--;
+            admitWaiting();
+        }
+    }
+
+    private static boolean admissible(Priority priority) {
+        return switch (priority) {
+            case INSTANT -> inFlight < capacity;
+            case BULK -> inFlight < bulkLimit && lanes.get(Priority.INSTANT).queue.isEmpty();
+        };
+    }
+
+    private static void hold(String txId, Lane lane) {
+        holds.add(txId);
+        inFlight++;
+        lane.admitted.increment();
+    }
+
+    // lanes are drained in priority order, so bulk is only admitted once instant is empty
+    private static void admitWaiting() {
+        var now = System.currentTimeMillis();
+        for (Priority priority : Priority.values()) {
+            var lane = lanes.get(priority);
+            while (!lane.queue.isEmpty() && admissible(priority)) {
+                var waiter = lane.queue.poll();
+                waiting.remove(waiter.txId());
+                hold(waiter.txId(), lane);
+                lane.waited.record(now - waiter.enqueued());
+                waiter.admitted().complete(true);
+            }
+        }
+    }
+
+    private static void expire(Lane lane, Waiter waiter) {
+        synchronized (PaymentLanes.class) {
+            if (!lane.queue.remove(waiter)) return;
+            waiting.remove(waiter.txId());
+            lane.refused.increment();
+            lane.waited.record(System.currentTimeMillis() - waiter.enqueued());
+        }
+        waiter.admitted().completeExceptionally(new Refused(lane.priority, "wait timed out"));
+    }
+
+    private record Waiter(String txId, long enqueued, CompletableFuture<Boolean> admitted) {}
+
+    private static final class Lane {
+
+        private final Priority priority;
+        private final int queueSize;
+        private final long maxWaitMillis;
+        private final ArrayDeque<Waiter> queue = new ArrayDeque<>();
+        private final LongAdder admitted;
+        private final LongAdder refused;
+        private final LatencyHistogram waited;
+
+        private Lane(Priority priority, int queueSize, long maxWaitMillis) {
+            var lane = priority.name().toLowerCase();
+            this.priority = priority;
+            this.queueSize = queueSize;
+            this.maxWaitMillis = maxWaitMillis;
+            this.admitted = Metrics.counter(
+                "payment_lane_admitted_total", "Payments admitted into the workflow, by priority lane.",
+                "lane", lane);
+            this.refused = Metrics.counter(
+                "payment_lane_refused_total", "Payments refused because their lane's queue was full or their wait timed out.",
+                "lane", lane);
+            this.waited = Metrics.histogram(
+                "payment_lane_wait_milliseconds", "Time payments waited in their lane before admission or refusal.",
+                "lane", lane);
+            Metrics.gauge(
+                "payment_lane_queue_depth", "Payments waiting for admission, by priority lane.",
+                () -> { synchronized (PaymentLanes.class) { return queue.size(); } },
+                "lane", lane);
+        }
+
+    }
+
+}
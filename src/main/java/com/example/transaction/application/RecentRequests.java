@@ -0,0 +1,126 @@
+package com.example.transaction.application;
+
+import com.example.transaction.domain.Transaction;
+import com.example.transaction.domain.Transaction.Priority;
+import com.example.util.Metrics;
+import com.typesafe.config.Config;
+import com.typesafe.config.ConfigFactory;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+public class RecentRequests {
+
+    /**
+     * RecentRequests remembers the payment requests this node has recently started, so that a
+     * client retrying one is answered at the edge without activating its workflow.
+     *
+     * Each started txId is kept with a fingerprint of its request. A retry with the same
+     * fingerprint is a duplicate; it is answered with the terminal status when
+     * {@link TerminalStates} has it, and otherwise with the status the payment was accepted in,
+     * labelled as such since the workflow has likely moved on. A request reusing the txId with
+     * a different payload is a conflict. Entries expire after
+     * the TTL, and the oldest are dropped beyond the maximum size; a txId that is not found is
+     * passed on to the workflow, which still detects duplicates itself.
+     *
+     * Configured under payment.recent-requests in application.conf.
+     *
+     */
+
+    private static final Config config = ConfigFactory.load().getConfig("payment.recent-requests");
+    private static final boolean enabled = config.getBoolean("enabled");
+    private static final int maxSize = config.getInt("max-size");
+    private static final long ttlMillis = config.getDuration("ttl").toMillis();
+
+    private static final Map<String, Entry> entries = new LinkedHashMap<>(1024, 0.75f, false) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+            return size() > maxSize;
+        }
+    };
+
+    private static final LongAdder hits = lookups("hit");
+    private static final LongAdder conflicts = lookups("conflict");
+    private static final LongAdder misses = lookups("miss");
+
+    static {
+        Metrics.gauge(
+            "payment_recent_requests_size", "Payment requests remembered at the edge for duplicate detection.",
+            () -> { synchronized (entries) { return entries.size(); } });
+    }
+
+    public sealed interface Lookup {
+
+        record Miss() implements Lookup {}
+
+        record Duplicate(Transaction.Response response) implements Lookup {}
+
+        record Conflict(String message) implements Lookup {}
+
+    }
+
+    private record Fingerprint(String processId, String from, String to, int amount, Long deadline, Priority priority, Long executeAt) {
+
+        static Fingerprint of(Transaction.Request request) {
+            return new Fingerprint(
+                request.processId(), request.from(), request.to(), request.amount(), request.deadline(), request.priority(), request.executeAt()
+            );
+        }
+
+    }
+
+    private record Entry(Fingerprint fingerprint, Transaction.Response.Received response, long stored) {}
+
+    private static final Lookup MISS = new Lookup.Miss();
+
+    public static Lookup lookup(String txId, Transaction.Request request) {
+        if (!enabled) return MISS;
+        Entry entry;
+        synchronized (entries) {
+            entry = entries.get(txId);
+            if (entry != null && System.currentTimeMillis() - entry.stored() > ttlMillis) {
+                entries.remove(txId);
+                entry = null;
+            }
+        }
+        if (entry == null) {
+            misses.increment();
+            return MISS;
+        }
+        if (!entry.fingerprint().equals(Fingerprint.of(request))) {
+            conflicts.increment();
+            return new Lookup.Conflict("Transaction " + txId + " was already submitted with a different payload.");
+        }
+        hits.increment();
+        var terminal = TerminalStates.get(txId);
+        if (terminal.isPresent()) {
+            return new Lookup.Duplicate(
+                new Transaction.Response.Processing(txId, terminal.get().status().name(), "Duplicate Request: Transaction already handled.")
+            );
+        }
+        var received = entry.response();
+        return new Lookup.Duplicate(
+            new Transaction.Response.Processing(received.txId(), received.status(),
+                "Duplicate Request: Transaction accepted in status " + received.status() + ", get the transaction for its current status.")
+        );
+    }
+
+    /**
+     * Remembers a request once its workflow has accepted it.
+     */
+    public static void accepted(String txId, Transaction.Request request, Transaction.Response.Received response) {
+        if (!enabled) return;
+        var entry = new Entry(Fingerprint.of(request), response, System.currentTimeMillis());
+        synchronized (entries) {
+            entries.put(txId, entry);
+        }
+    }
+
+    private static LongAdder lookups(String result) {
+        return Metrics.counter(
+            "payment_recent_requests_lookups_total", "Edge duplicate detection lookups: hit (duplicate answered), conflict (txId reused) or miss.",
+            "result", result);
+    }
+
+}
@@ -0,0 +1,69 @@
+package com.example.transaction.application;
+
+import akka.javasdk.annotations.ComponentId;
+import akka.javasdk.keyvalueentity.KeyValueEntity;
+import com.example.transaction.domain.Transaction;
+import com.typesafe.config.Config;
+import com.typesafe.config.ConfigFactory;
+
+@ComponentId("scheduled-payment")
+public class ScheduledPayment extends KeyValueEntity<ScheduledPayment.State> {
+
+    /**
+     * ScheduledPayment holds one future-dated payment, keyed by its txId, until it is due.
+     *
+     * Each payment is its own small entity, so scheduling never rewrites other payments and a
+     * month-end with millions of payments due at once does not pile up in a few entities. The
+     * payments are indexed by due time in {@link ScheduledPaymentsView}, from which
+     * {@link ScheduledReleaser} starts them once they are due. A released payment is kept,
+     * marked as released, so that scheduling it again is recognised as a duplicate.
+     *
+     * Configured under payment.scheduling in application.conf.
+     *
+     */
+
+    private static final Config config = ConfigFactory.load().getConfig("payment.scheduling");
+    private static final long minLeadMillis = config.getDuration("min-lead").toMillis();
+    private static final long maxHorizonMillis = config.getDuration("max-horizon").toMillis();
+
+    /**
+     * Whether the request is dated far enough ahead to be scheduled; one due sooner is started
+     * straight away.
+     */
+    public static boolean isScheduled(Transaction.Request request) {
+        return request.executeAt() != null && request.executeAt() > System.currentTimeMillis() + minLeadMillis;
+    }
+
+    /**
+     * How far ahead payments can be scheduled.
+     */
+    public static long maxHorizonMillis() {
+        return maxHorizonMillis;
+    }
+
+    public Effect<String> schedule(Transaction.Request request) {
+        if (currentState() != null) return effects().reply("ok");
+        return effects()
+            .updateState(new State(commandContext().entityId(), request, false))
+            .thenReply("ok");
+    }
+
+    public Effect<String> released() {
+        var current = currentState();
+        if (current == null || current.released()) return effects().reply("ok");
+        return effects()
+            .updateState(new State(current.txId(), current.request(), true))
+            .thenReply("ok");
+    }
+
+    public Effect<State> get() {
+        if (currentState() == null) {
+            return effects().error("payment not scheduled");
+        } else {
+            return effects().reply(currentState());
+        }
+    }
+
+    public record State(String txId, Transaction.Request request, boolean released) {}
+
+}
@@ -0,0 +1,72 @@
+package com.example.transaction.application;
+
+import akka.javasdk.annotations.ComponentId;
+import akka.javasdk.annotations.Consume;
+import akka.javasdk.annotations.Query;
+import akka.javasdk.annotations.Table;
+import akka.javasdk.view.TableUpdater;
+import akka.javasdk.view.View;
+import com.example.transaction.domain.Transaction;
+
+import java.util.List;
+
+@ComponentId("scheduled-payments")
+public class ScheduledPaymentsView extends View {
+
+    /**
+     * ScheduledPaymentsView indexes the scheduled payments that have not been released yet by
+     * when they are due, so that {@link ScheduledReleaser} can find the ones that are due, the
+     * earliest first, from a position in that order. A row is removed once its payment is
+     * released.
+     *
+     */
+
+    @Table("scheduled_payments")
+    @Consume.FromKeyValueEntity(ScheduledPayment.class)
+    public static class ScheduledPaymentsUpdater extends TableUpdater<DuePayment> {
+
+        public Effect<DuePayment> onUpdate(ScheduledPayment.State state) {
+            if (state.released()) return effects().deleteRow();
+            var request = state.request();
+            return effects().updateRow(
+                new DuePayment(
+                    state.txId(),
+                    request.processId(),
+                    request.from(),
+                    request.to(),
+                    request.amount(),
+                    request.deadline(),
+                    request.priority().name(),
+                    request.executeAt()
+                )
+            );
+        }
+
+    }
+
+    @Query("""
+        SELECT * AS payments
+        FROM scheduled_payments
+        WHERE executeAt <= :before
+          AND (executeAt > :afterExecuteAt OR (executeAt = :afterExecuteAt AND txId > :afterTxId))
+        ORDER BY executeAt, txId
+        LIMIT :limit
+        """)
+    public QueryEffect<DuePayments> due(Due query) {
+        return queryResult();
+    }
+
+    public record Due(long before, long afterExecuteAt, String afterTxId, int limit) {}
+
+    public record DuePayment(
+        String txId, String processId, String from, String to, int amount, Long deadline, String priority, long executeAt) {
+
+        public Transaction.Request request() {
+            return new Transaction.Request(processId, from, to, amount, deadline, Transaction.Priority.valueOf(priority), executeAt);
+        }
+
+    }
+
+    public record DuePayments(List<DuePayment> payments) {}
+
+}
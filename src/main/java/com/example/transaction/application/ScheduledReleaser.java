@@ -0,0 +1,148 @@
+package com.example.transaction.application;
+
+import akka.Done;
+import akka.javasdk.annotations.ComponentId;
+import akka.javasdk.client.ComponentClient;
+import akka.javasdk.timedaction.TimedAction;
+import akka.javasdk.timer.TimerScheduler;
+import com.example.util.Metrics;
+import com.example.util.Parallel;
+import com.typesafe.config.Config;
+import com.typesafe.config.ConfigFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+@ComponentId("scheduled-releaser")
+public class ScheduledReleaser extends TimedAction {
+
+    /**
+     * ScheduledReleaser starts the workflows of scheduled payments once they are due, one batch
+     * at a time.
+     *
+     * Each call takes at most batch-size of the earliest due payments from
+     * {@link ScheduledPaymentsView}, starts their workflows with at most max-parallel starts
+     * outstanding, and marks them released. While more are due the next call follows after the
+     * batch interval and carries on after the last payment of the batch, so it does not see the
+     * batch again while the view catches up; otherwise it starts over after the poll interval.
+     * There is a single chain of calls for the whole service, so no more than release-rate
+     * payments a second are released however many fall due at once, which turns a month-end
+     * spike, or the backlog left by an outage, into a steady stream the Account entities can
+     * take.
+     *
+     * A payment whose start fails is left in the view and picked up by a later call; payments
+     * started twice are recognised as duplicates by their workflow. The chain reschedules
+     * itself under a single timer name, replacing the timer in place, and is started by
+     * {@link #start} when the service starts.
+     *
+     */
+
+    private static final Logger log = LoggerFactory.getLogger(ScheduledReleaser.class);
+
+    private static final String TIMER = "scheduled-releaser";
+
+    private static final Config config = ConfigFactory.load().getConfig("payment.scheduling");
+    private static final Duration pollInterval = config.getDuration("poll-interval");
+    private static final int batchSize = config.getInt("batch-size");
+    private static final int maxParallel = config.getInt("max-parallel");
+    private static final Duration batchInterval = Duration.ofMillis(
+        (long) Math.ceil(1000.0 * batchSize / config.getDouble("release-rate"))
+    );
+
+    private static final LongAdder released = Metrics.counter(
+        "payment_scheduled_released_total", "Scheduled payments whose workflow was started when they fell due.");
+    private static final LongAdder errors = Metrics.counter(
+        "payment_scheduled_errors_total", "Scheduled payments whose release failed; they are picked up again by a later release.");
+    private static final AtomicLong backlog = new AtomicLong();
+
+    static {
+        Metrics.gauge(
+            "payment_scheduled_backlog", "Due payments found by the last release on this node, counted up to one more than the batch size.",
+            backlog::get);
+    }
+
+    /**
+     * Arms the release timer, replacing whichever one is armed, so starting the releaser on
+     * every node still leaves a single chain of releases. The two names releases used to
+     * alternate between are dropped, in case a chain under them is still armed.
+     */
+    public static CompletionStage<Done> start(TimerScheduler timers, ComponentClient client) {
+        return timers.cancel(TIMER + "-0")
+            .thenCompose(__ -> timers.cancel(TIMER + "-1"))
+            .thenCompose(__ -> schedule(timers, client, Cursor.START, pollInterval));
+    }
+
+    private final ComponentClient client;
+
+    public ScheduledReleaser(ComponentClient client) {
+        this.client = client;
+    }
+
+    public Effect release(Cursor cursor) {
+        return effects().asyncDone(
+            client.forView()
+                .method(ScheduledPaymentsView::due)
+                .invokeAsync(new ScheduledPaymentsView.Due(System.currentTimeMillis(), cursor.executeAt(), cursor.txId(), batchSize + 1))
+                .thenCompose(found -> {
+                    var due = found.payments();
+                    var batch = due.subList(0, Math.min(batchSize, due.size()));
+                    backlog.set(due.size());
+                    return Parallel.map(batch, maxParallel, this::start)
+                        .thenCompose(__ -> {
+                            if (!batch.isEmpty()) log.debug("Released [{}] scheduled payments.", batch.size());
+                            if (due.size() <= batchSize) return schedule(timers(), client, cursor.restart(), pollInterval);
+                            var last = batch.getLast();
+                            return schedule(timers(), client, cursor.after(last.executeAt(), last.txId()), batchInterval);
+                        });
+                })
+        );
+    }
+
+    /**
+     * Where a release carries on from.
+     */
+    public record Cursor(long executeAt, String txId) {
+
+        static final Cursor START = new Cursor(0L, "");
+
+        Cursor after(long executeAt, String txId) {
+            return new Cursor(executeAt, txId);
+        }
+
+        Cursor restart() {
+            return START;
+        }
+
+    }
+
+    private CompletionStage<String> start(ScheduledPaymentsView.DuePayment payment) {
+        return client.forWorkflow(payment.txId())
+            .method(TransactionWorkflow::process)
+            .invokeAsync(payment.request())
+            .thenCompose(__ -> client.forKeyValueEntity(payment.txId())
+                .method(ScheduledPayment::released)
+                .invokeAsync())
+            .handle((done, error) -> {
+                if (error != null) {
+                    log.warn("Releasing scheduled payment [{}] failed.", payment.txId(), error);
+                    errors.increment();
+                    return null;
+                }
+                released.increment();
+                return done;
+            });
+    }
+
+    private static CompletionStage<Done> schedule(TimerScheduler timers, ComponentClient client, Cursor cursor, Duration delay) {
+        return timers.startSingleTimer(
+            TIMER,
+            delay,
+            client.forTimedAction().method(ScheduledReleaser::release).deferred(cursor)
+        );
+    }
+
+}
@@ -0,0 +1,110 @@
+package com.example.transaction.application;
+
+import com.example.transaction.application.TransactionWorkflow.State.StepId;
+import com.example.util.LatencyHistogram;
+import com.example.util.Metrics;
+import com.typesafe.config.Config;
+import com.typesafe.config.ConfigFactory;
+
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class StepTimeouts {
+
+    /**
+     * StepTimeouts derives each workflow step's timeout from the latency it has recently shown,
+     * instead of giving every step the same fixed timeout.
+     *
+     * A step's timeout is a high percentile of its single-attempt latency over a rolling window,
+     * times a safety multiplier, clamped between a floor and a ceiling. Until a step has enough
+     * samples in the window its timeout is the ceiling, so a cold node never times out early.
+     * Attempts that time out are recorded at the timeout they had, see {@link StepTimings}, so a
+     * slowdown raises the percentile instead of leaving it at the latency of the fast attempts.
+     *
+     * Only the read-only checks are adaptive. Posting, clearing and compensation move money: a
+     * timeout there fails the workflow over after the money may already have moved, so they keep
+     * the ceiling, as do the failover handler and netting. Latencies are node-local and timeouts
+     * are taken when a workflow's definition is built.
+     *
+     * Configured under payment.step-timeouts in application.conf.
+     *
+     */
+
+    private static final Config config = ConfigFactory.load().getConfig("payment.step-timeouts");
+    private static final double percentile = config.getDouble("percentile");
+    private static final double multiplier = config.getDouble("multiplier");
+    private static final long floorMillis = config.getDuration("floor").toMillis();
+    private static final long ceilingMillis = config.getDuration("ceiling").toMillis();
+    private static final long minSamples = config.getLong("min-samples");
+    private static final long windowMillis = config.getDuration("window").toMillis();
+
+    private static final Set<StepId> ADAPTIVE = EnumSet.of(
+        StepId.VALIDATE_TRANSACTION, StepId.SANCTION_CHECK, StepId.LIQUIDITY_CHECK);
+
+    private static final Map<StepId, AtomicReference<Window>> windows = new EnumMap<>(StepId.class);
+
+    static {
+        var now = System.currentTimeMillis();
+        for (StepId step : ADAPTIVE) {
+            windows.put(step, new AtomicReference<>(new Window(new LatencyHistogram(), new LatencyHistogram(), now)));
+            Metrics.gauge(
+                "payment_step_timeout_milliseconds", "Timeout currently applied to each workflow step.",
+                () -> timeout(step).toMillis(),
+                "step", step.name());
+        }
+    }
+
+    public static Duration ceiling() {
+        return Duration.ofMillis(ceilingMillis);
+    }
+
+    public static void record(StepId step, long millis) {
+        var now = System.currentTimeMillis();
+        var reference = windows.get(step);
+        if (reference == null) return;
+        var window = reference.get();
+        if (now - window.started() >= windowMillis) {
+            var rotated = new Window(new LatencyHistogram(), window.current(), now);
+            window = reference.compareAndSet(window, rotated) ? rotated : reference.get();
+        }
+        window.current().record(millis);
+    }
+
+    public static Duration timeout(StepId step) {
+        if (!ADAPTIVE.contains(step)) return ceiling();
+        return Duration.ofMillis(compute(snapshot(step)));
+    }
+
+    public static List<StepTimeout> timeouts() {
+        return ADAPTIVE.stream()
+            .map(step -> {
+                var snapshot = snapshot(step);
+                return new StepTimeout(step, compute(snapshot), snapshot.count(), snapshot.percentile(percentile));
+            })
+            .toList();
+    }
+
+    private static LatencyHistogram.Snapshot snapshot(StepId step) {
+        var window = windows.get(step).get();
+        var age = System.currentTimeMillis() - window.started();
+        if (age >= 2 * windowMillis) return new LatencyHistogram().snapshot();
+        var current = window.current().snapshot();
+        return age >= windowMillis ? current : current.plus(window.previous().snapshot());
+    }
+
+    private static long compute(LatencyHistogram.Snapshot snapshot) {
+        if (snapshot.count() < minSamples) return ceilingMillis;
+        var derived = (long) Math.ceil(snapshot.percentile(percentile) * multiplier);
+        return Math.max(floorMillis, Math.min(ceilingMillis, derived));
+    }
+
+    private record Window(LatencyHistogram current, LatencyHistogram previous, long started) {}
+
+    public record StepTimeout(StepId step, long timeoutMillis, long samples, long observedMillis) {}
+
+}
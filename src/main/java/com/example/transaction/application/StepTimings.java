@@ -0,0 +1,108 @@
+package com.example.transaction.application;
+
+import com.example.transaction.application.TransactionWorkflow.State.StepId;
+import com.example.util.LatencyHistogram;
+import com.example.util.Metrics;
+
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class StepTimings {
+
+    /**
+     * StepTimings tracks the step attempt currently running for each workflow on this node,
+     * and aggregates step latencies across all workflows.
+     *
+     * A workflow step call cannot update the workflow state, so the start time and the number
+     * of attempts (including those triggered by the recover strategy's maxRetries) are kept here
+     * between the call and its andThen, where they are written into the step history.
+     *
+     * An attempt that is followed by another one without ending, a retry or the failover, and
+     * that ran for at least its timeout, has timed out; it is recorded in {@link StepTimeouts}
+     * as a censored sample at that timeout, since its real latency is only known to be longer.
+     * A retry that succeeds is recorded with the latency of its own attempt.
+     *
+     * Attempts are node-local: if the andThen runs without a matching attempt, for instance
+     * after a restart, the caller falls back to its own estimate. Attempts whose workflow never
+     * came back are swept once more than MAX_IN_FLIGHT are tracked, by at most one caller a
+     * second, so a node holding many long-running attempts does not scan them on every step.
+     *
+     */
+
+    private static final int MAX_IN_FLIGHT = 100_000;
+    private static final long STALE_AFTER_MILLIS = 120_000;
+    private static final long SWEEP_INTERVAL_MILLIS = 1_000;
+
+    private static final Map<String, Attempt> inFlight = new ConcurrentHashMap<>();
+    private static final AtomicLong nextSweep = new AtomicLong();
+    private static final Map<StepId, LatencyHistogram> histograms = new EnumMap<>(StepId.class);
+
+    static {
+        for (StepId step : StepId.values()) {
+            histograms.put(step, Metrics.histogram(
+                "payment_step_duration_milliseconds", "Time spent inside each workflow step, across all attempts.",
+                "step", step.name()));
+        }
+    }
+
+    public static void begin(String txId, StepId step) {
+        var now = System.currentTimeMillis();
+        sweep(now);
+        var previous = inFlight.get(txId);
+        inFlight.put(txId,
+            previous != null && previous.step() == step
+                ? previous.retried(now)
+                : new Attempt(step, now, 1, now, StepTimeouts.timeout(step).toMillis())
+        );
+        if (previous != null && now - previous.attemptStarted() >= previous.timeoutMillis()) {
+            StepTimeouts.record(previous.step(), previous.timeoutMillis());
+        }
+    }
+
+    public static Attempt end(String txId, StepId step, long fallbackStarted) {
+        var now = System.currentTimeMillis();
+        var current = inFlight.remove(txId);
+        var attempt = current != null && current.step() == step
+            ? current
+            : new Attempt(step, fallbackStarted, 1, fallbackStarted, 0);
+        histograms.get(step).record(now - attempt.started());
+        StepTimeouts.record(step, now - attempt.attemptStarted());
+        return attempt;
+    }
+
+    private static void sweep(long now) {
+        var due = nextSweep.get();
+        if (now < due || inFlight.size() <= MAX_IN_FLIGHT) return;
+        if (!nextSweep.compareAndSet(due, now + SWEEP_INTERVAL_MILLIS)) return;
+        inFlight.values().removeIf(attempt -> now - attempt.started() > STALE_AFTER_MILLIS);
+    }
+
+    public static void clear(String txId) {
+        inFlight.remove(txId);
+    }
+
+    public static LatencyHistogram histogram(StepId step) {
+        return histograms.get(step);
+    }
+
+    public static List<StepLatency> latencies() {
+        return Arrays.stream(StepId.values())
+            .map(step -> new StepLatency(step, histograms.get(step).snapshot().summary()))
+            .toList();
+    }
+
+    public record Attempt(StepId step, long started, int attempts, long attemptStarted, long timeoutMillis) {
+
+        Attempt retried(long now) {
+            return new Attempt(step, started, attempts + 1, now, StepTimeouts.timeout(step).toMillis());
+        }
+
+    }
+
+    public record StepLatency(StepId step, LatencyHistogram.Summary latency) {}
+
+}
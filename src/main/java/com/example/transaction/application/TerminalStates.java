@@ -0,0 +1,76 @@
+package com.example.transaction.application;
+
+import com.example.util.Metrics;
+import com.typesafe.config.Config;
+import com.typesafe.config.ConfigFactory;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.LongAdder;
+
+public class TerminalStates {
+
+    /**
+     * TerminalStates caches the final state of finished transactions for the transaction
+     * endpoint. A workflow's state never changes once it has reached a terminal status, so a
+     * cached copy can be served for as long as it is kept, with no expiry or invalidation. Only
+     * the least recently read states beyond the maximum size are dropped, and are read through
+     * from the workflow again the next time they are asked for.
+     *
+     * It also derives the ETag of a state, from its status and step history, which change on
+     * every workflow state update.
+     *
+     * Configured under payment.terminal-states in application.conf.
+     *
+     */
+
+    private static final Config config = ConfigFactory.load().getConfig("payment.terminal-states");
+    private static final int maxSize = config.getInt("max-size");
+
+    private static final Map<String, TransactionWorkflow.State> states = new LinkedHashMap<>(1024, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, TransactionWorkflow.State> eldest) {
+            return size() > maxSize;
+        }
+    };
+
+    private static final LongAdder hits = reads("hit");
+    private static final LongAdder misses = reads("miss");
+
+    static {
+        Metrics.gauge(
+            "payment_terminal_states_size", "Terminal transaction states cached by the transaction endpoint.",
+            () -> { synchronized (states) { return states.size(); } });
+    }
+
+    public static Optional<TransactionWorkflow.State> get(String txId) {
+        TransactionWorkflow.State state;
+        synchronized (states) {
+            state = states.get(txId);
+        }
+        (state == null ? misses : hits).increment();
+        return Optional.ofNullable(state);
+    }
+
+    /**
+     * Caches the state if it is terminal; any other state is left for the workflow to serve.
+     */
+    public static void offer(TransactionWorkflow.State state) {
+        if (maxSize == 0 || !state.status().isTerminal()) return;
+        synchronized (states) {
+            states.put(state.txId(), state);
+        }
+    }
+
+    public static String etag(TransactionWorkflow.State state) {
+        return state.status().name() + "-" + state.history().size() + "-" + state.history().lastFinishedOffset();
+    }
+
+    private static LongAdder reads(String result) {
+        return Metrics.counter(
+            "payment_terminal_states_reads_total", "Transaction reads served from the terminal state cache (hit) or the workflow (miss).",
+            "result", result);
+    }
+
+}
@@ -0,0 +1,119 @@
+package com.example.transaction.application;
+
+import akka.javasdk.annotations.ComponentId;
+import akka.javasdk.annotations.Consume;
+import akka.javasdk.client.ComponentClient;
+import akka.javasdk.consumer.Consumer;
+import com.example.util.Metrics;
+import com.typesafe.config.ConfigFactory;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.atomic.LongAdder;
+
+@ComponentId("transaction-log-consumer")
+@Consume.FromWorkflow(TransactionWorkflow.class)
+public class TransactionLogConsumer extends Consumer {
+
+    /**
+     * TransactionLogConsumer records finished transactions in the {@link TransactionLogger} of
+     * their processId, so a workflow ends as soon as it is cleared or compensated instead of
+     * spending a step, and a persisted state update, on logging.
+     *
+     * An entry is sent to its logger straight away when no call to that logger is in flight.
+     * Entries that arrive while one is, from the other updates being handled on this node, are
+     * grouped and sent together, up to max-batch at a time, as soon as it completes: a busy
+     * processId takes one logger update per group rather than one per transaction, and no
+     * entry ever waits for others to join it. An update is acknowledged once its entry has been
+     * recorded; a failed call fails every update in it and they are redelivered, which
+     * TransactionLogger ignores for txIds it has already counted.
+     *
+     * Configured under payment.transaction-log in application.conf.
+     *
+     */
+
+    private static final int maxBatch = ConfigFactory.load().getConfig("payment.transaction-log").getInt("max-batch");
+
+    private static final Map<String, ArrayDeque<Batch>> waiting = new HashMap<>();
+
+    private static final LongAdder entries = Metrics.counter(
+        "payment_transaction_log_entries_total", "Finished transactions sent to the transaction logger.");
+    private static final LongAdder batches = Metrics.counter(
+        "payment_transaction_log_batches_total", "Calls to the transaction logger, each carrying one or more finished transactions.");
+
+    private final ComponentClient client;
+
+    public TransactionLogConsumer(ComponentClient client) {
+        this.client = client;
+    }
+
+    public Effect onUpdate(TransactionWorkflow.State state) {
+        if (state == null || !state.status().isTerminal()) return effects().ignore();
+        var entry = new TransactionLogger.Log.Entry(
+            state.txId(),
+            state.processId(),
+            state.status().name(),
+            state.started(),
+            state.ended(),
+            state.duration()
+        );
+        entries.increment();
+        return effects().asyncDone(add(entry));
+    }
+
+    // a processId has a queue while a call to its logger is in flight; its head is the batch being sent
+    private CompletionStage<TransactionLogger.Message> add(TransactionLogger.Log.Entry entry) {
+        Batch batch;
+        synchronized (waiting) {
+            var queue = waiting.get(entry.processId());
+            if (queue != null) {
+                var last = queue.size() > 1 ? queue.peekLast() : null;
+                if (last == null || last.entries.size() >= maxBatch) {
+                    last = new Batch();
+                    queue.add(last);
+                }
+                last.entries.add(entry);
+                return last.recorded;
+            }
+            batch = new Batch();
+            batch.entries.add(entry);
+            queue = new ArrayDeque<>();
+            queue.add(batch);
+            waiting.put(entry.processId(), queue);
+        }
+        send(entry.processId(), batch);
+        return batch.recorded;
+    }
+
+    private void send(String processId, Batch batch) {
+        batches.increment();
+        client.forKeyValueEntity(processId)
+            .method(TransactionLogger::logAll)
+            .invokeAsync(List.copyOf(batch.entries))
+            .whenComplete((message, error) -> {
+                Batch next;
+                synchronized (waiting) {
+                    var queue = waiting.get(processId);
+                    queue.poll();
+                    next = queue.peek();
+                    if (next == null) waiting.remove(processId);
+                }
+                if (error != null) batch.recorded.completeExceptionally(error);
+                else batch.recorded.complete(message);
+                if (next != null) send(processId, next);
+            });
+    }
+
+    private static final class Batch {
+
+        final List<TransactionLogger.Log.Entry> entries = new ArrayList<>();
+        final CompletableFuture<TransactionLogger.Message> recorded = new CompletableFuture<>();
+
+    }
+
+}
@@ -2,39 +2,62 @@ package com.example.transaction.application;
 
 import akka.javasdk.annotations.ComponentId;
 import akka.javasdk.keyvalueentity.KeyValueEntity;
+import com.typesafe.config.ConfigFactory;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+
 @ComponentId("transaction-logger")
 public class TransactionLogger extends KeyValueEntity<TransactionLogger.State> {
 
+    /**
+     * TransactionLogger keeps the duration statistics of the completed transactions of one
+     * processId.
+     *
+     * Entries are sent by {@link TransactionLogConsumer}, off the workflow's critical path, one
+     * at a time or grouped while the entity is busy. Delivery is at least once, so the txIds
+     * most recently counted are remembered and an entry seen again is skipped; the window only
+     * needs to cover redeliveries, which follow the original closely.
+     *
+     * Configured under payment.transaction-log in application.conf.
+     *
+     */
+
     private static final Logger log = LoggerFactory.getLogger(TransactionLogger.class);
 
+    private static final int recentTxIds = ConfigFactory.load().getConfig("payment.transaction-log").getInt("recent-tx-ids");
+
     @Override
     public State emptyState() { return State.emptyState(); }
 
     public Effect<Message> log(Log.Entry transaction) {
-        log.info("Recording Transaction: {}", transaction);
+        return logAll(List.of(transaction));
+    }
+
+    public Effect<Message> logAll(List<Log.Entry> transactions) {
+        log.debug("Recording Transactions: {}", transactions);
 
-        if(!transaction.status().equals("TRANSACTION_COMPLETED")) {
+        var current = currentState();
+        var updated = current.record(transactions);
+        if (updated == current) {
             return effects().reply(new Message("Not Logging Transaction"));
         }
 
         return effects()
-            .updateState(
-                currentState().log(
-                    transaction.processId,
-                    transaction.txDuration
-                )
-            )
+            .updateState(updated)
             .thenReply(new Message("Transaction Logged"));
     }
 
-    public Effect<State> get() {
-        return effects().reply(currentState());
+    public Effect<Summary> get() {
+        return effects().reply(Summary.of(currentState()));
     }
 
-    public record State(
+    public record Summary(
         String processId,
         long minDuration,
         long maxDuration,
@@ -42,8 +65,25 @@ public class TransactionLogger extends KeyValueEntity<TransactionLogger.State> {
         long avgDuration,
         int count) {
 
+        static Summary of(State state) {
+            return new Summary(
+                state.processId(), state.minDuration(), state.maxDuration(), state.sumDuration(), state.avgDuration(), state.count()
+            );
+        }
+
+    }
+
+    public record State(
+        String processId,
+        long minDuration,
+        long maxDuration,
+        long sumDuration,
+        long avgDuration,
+        int count,
+        List<String> recentTxIds) {
+
         public static State emptyState() {
-            return new State("", 0L, 0L, 0L, 0L, 0);
+            return new State("", 0L, 0L, 0L, 0L, 0, List.of());
         }
 
         public State log(String processId, long txDuration) {
@@ -52,7 +92,38 @@ public class TransactionLogger extends KeyValueEntity<TransactionLogger.State> {
             var sum = sumDuration + txDuration;
             var count = this.count + 1;
             var avg = sum / count;
-            return new State(processId, min, max, sum, avg, count);
+            return new State(processId, min, max, sum, avg, count, recentTxIds);
+        }
+
+        /**
+         * Counts the completed transactions among the entries whose txIds have not been counted
+         * yet. Returns this state when there are none.
+         */
+        public State record(List<Log.Entry> transactions) {
+            var recent = recentTxIds == null ? List.<String>of() : recentTxIds;
+            // a lone entry scans the list, a batch builds a set of it once
+            Collection<String> seen = transactions.size() > 1 ? new HashSet<>(recent) : recent;
+            var updated = this;
+            var counted = new LinkedHashSet<String>();
+            for (var transaction : transactions) {
+                if (!transaction.status().equals("TRANSACTION_COMPLETED")) continue;
+                if (seen.contains(transaction.txId()) || !counted.add(transaction.txId())) continue;
+                updated = updated.log(transaction.processId(), transaction.txDuration());
+            }
+            return counted.isEmpty() ? this : updated.remember(counted);
+        }
+
+        /**
+         * Adds the txIds of a batch to the recently counted ones, dropping the oldest beyond the
+         * configured number.
+         */
+        State remember(Collection<String> txIds) {
+            var recent = new ArrayList<String>(recentTxIds == null ? List.of() : recentTxIds);
+            recent.addAll(txIds);
+            if (recent.size() > TransactionLogger.recentTxIds) {
+                recent.subList(0, recent.size() - TransactionLogger.recentTxIds).clear();
+            }
+            return new State(processId, minDuration, maxDuration, sumDuration, avgDuration, count, recent);
         }
 
     }
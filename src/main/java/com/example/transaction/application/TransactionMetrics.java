@@ -0,0 +1,93 @@
+package com.example.transaction.application;
+
+import com.example.transaction.application.TransactionWorkflow.State;
+import com.example.transaction.application.TransactionWorkflow.State.Status;
+import com.example.transaction.application.TransactionWorkflow.State.StepId;
+import com.example.util.LatencyHistogram;
+import com.example.util.Metrics;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+public class TransactionMetrics {
+
+    /**
+     * TransactionMetrics holds the payment pipeline series published through {@link Metrics}:
+     * workflows started, the statuses they move through, end-to-end duration, compensations and
+     * the reasons checks are rejected.
+     *
+     * There is no in-flight gauge: a workflow may finish on another node than the one that
+     * started it, so a per-node difference of the two drifts. Workflows in flight across the
+     * service are the started total less the terminal status totals, summed over the nodes.
+     *
+     * Rejection reasons become label values, so they are trimmed to the text before any detail
+     * separator and capped at {@link #MAX_REASONS} distinct values per step.
+     *
+     */
+
+    private static final int MAX_REASONS = 50;
+
+    private static final LongAdder started = Metrics.counter(
+        "payment_workflows_started_total", "Payment workflows started on this node.");
+    private static final LatencyHistogram duration = Metrics.histogram(
+        "payment_workflow_duration_milliseconds", "End-to-end payment duration, from request to terminal status.");
+    private static final Map<Status, LongAdder> statuses = new EnumMap<>(Status.class);
+    private static final Map<String, LongAdder> rejections = new ConcurrentHashMap<>();
+
+    static {
+        for (Status status : Status.values()) {
+            statuses.put(status, Metrics.counter(
+                "payment_workflow_status_total", "Payment workflows entering each status.",
+                "status", status.name()));
+        }
+        Metrics.gauge(
+            "payment_compensation_ratio_permille", "Compensated payments per thousand completed or compensated payments.",
+            TransactionMetrics::compensationRatio);
+    }
+
+    public static void started() {
+        started.increment();
+    }
+
+    public static void entered(State state) {
+        statuses.get(state.status()).increment();
+        if (state.status().isTerminal()) {
+            duration.record(state.ended() > 0 ? state.duration() : System.currentTimeMillis() - state.started());
+        }
+    }
+
+    public static void rejected(StepId step, String reasons) {
+        for (String line : reasons.split("\n")) {
+            if (line.isBlank()) continue;
+            var reason = trim(line);
+            var key = step.name() + '|' + reason;
+            var counter = rejections.get(key);
+            if (counter == null) {
+                if (rejections.size() >= MAX_REASONS * StepId.values().length) {
+                    reason = "other";
+                    key = step.name() + "|other";
+                }
+                var label = reason;
+                counter = rejections.computeIfAbsent(key, __ -> Metrics.counter(
+                    "payment_step_rejections_total", "Rejected payment checks by step and reason.",
+                    "step", step.name(), "reason", label));
+            }
+            counter.increment();
+        }
+    }
+
+    private static String trim(String reason) {
+        var separator = reason.indexOf(':');
+        return (separator > 0 ? reason.substring(0, separator) : reason).strip();
+    }
+
+    private static long compensationRatio() {
+        var compensated = statuses.get(Status.COMPENSATION_COMPLETED).sum();
+        var completed = statuses.get(Status.TRANSACTION_COMPLETED).sum();
+        var total = compensated + completed;
+        return total == 0 ? 0 : compensated * 1000 / total;
+    }
+
+}
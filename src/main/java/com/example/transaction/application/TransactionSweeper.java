@@ -0,0 +1,149 @@
+package com.example.transaction.application;
+
+import akka.Done;
+import akka.javasdk.annotations.ComponentId;
+import akka.javasdk.client.ComponentClient;
+import akka.javasdk.timedaction.TimedAction;
+import akka.javasdk.timer.TimerScheduler;
+import com.example.util.Metrics;
+import com.example.util.Parallel;
+import com.typesafe.config.Config;
+import com.typesafe.config.ConfigFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+@ComponentId("transaction-sweeper")
+public class TransactionSweeper extends TimedAction {
+
+    /**
+     * TransactionSweeper finds the transactions that have made no progress for longer than
+     * stuck-after and asks each workflow to recover, see {@link TransactionWorkflow#recover()}.
+     *
+     * Each sweep recovers at most batch-size of the longest stuck transactions, with at most
+     * max-parallel recoveries outstanding. While more remain the next sweep follows after the
+     * batch interval, otherwise after the sweep interval, so that after an outage the backlog
+     * is worked off at a steady rate rather than all at once. The sweep reschedules itself
+     * under a single timer name, replacing the timer in place, and it is started by
+     * {@link #start} when the service starts.
+     *
+     * Configured under payment.sweeper in application.conf.
+     *
+     */
+
+    private static final Logger log = LoggerFactory.getLogger(TransactionSweeper.class);
+
+    private static final String TIMER = "transaction-sweeper";
+
+    private static final Config config = ConfigFactory.load().getConfig("payment.sweeper");
+    private static final boolean enabled = config.getBoolean("enabled");
+    private static final Duration interval = config.getDuration("interval");
+    private static final Duration batchInterval = config.getDuration("batch-interval");
+    private static final Duration stuckAfter = config.getDuration("stuck-after");
+    private static final Duration failAfter = config.getDuration("fail-after");
+    private static final int batchSize = config.getInt("batch-size");
+    private static final int maxParallel = config.getInt("max-parallel");
+
+    private static final LongAdder sweeps = Metrics.counter(
+        "payment_sweeper_sweeps_total", "Sweeps for stuck transactions.");
+    private static final Map<TransactionWorkflow.Recovery, LongAdder> recoveries = new EnumMap<>(TransactionWorkflow.Recovery.class);
+    private static final LongAdder errors = Metrics.counter(
+        "payment_sweeper_errors_total", "Stuck transactions whose recovery call failed; they are picked up again by a later sweep.");
+    private static final AtomicLong backlog = new AtomicLong();
+    private static final AtomicLong lastSweep = new AtomicLong();
+
+    static {
+        for (var recovery : TransactionWorkflow.Recovery.values()) {
+            recoveries.put(recovery, Metrics.counter(
+                "payment_sweeper_recoveries_total", "Stuck transactions recovered by the sweeper, by what was done with them.",
+                "action", recovery.name().toLowerCase()));
+        }
+        Metrics.gauge(
+            "payment_sweeper_backlog", "Stuck transactions found by the last sweep on this node, counted up to one more than the batch size.",
+            backlog::get);
+        Metrics.gauge(
+            "payment_sweeper_last_sweep_timestamp_seconds", "When this node last completed a sweep.",
+            () -> lastSweep.get() / 1000);
+    }
+
+    public static Duration failAfter() {
+        return failAfter;
+    }
+
+    /**
+     * The query for the transactions stuck in a status, longest stuck first.
+     */
+    public static OpenTransactionsView.StuckByStatus stuckIn(String status, int limit) {
+        return new OpenTransactionsView.StuckByStatus(status, System.currentTimeMillis() - stuckAfter.toMillis(), limit);
+    }
+
+    /**
+     * Arms the sweep timer, replacing whichever one is armed, so starting the sweeper on every
+     * node still leaves a single chain of sweeps. The two names sweeps used to alternate
+     * between are dropped, in case a chain under them is still armed.
+     */
+    public static CompletionStage<Done> start(TimerScheduler timers, ComponentClient client) {
+        if (!enabled) return CompletableFuture.completedStage(Done.getInstance());
+        return timers.cancel(TIMER + "-0")
+            .thenCompose(__ -> timers.cancel(TIMER + "-1"))
+            .thenCompose(__ -> schedule(timers, client, 0L, interval));
+    }
+
+    private final ComponentClient client;
+
+    public TransactionSweeper(ComponentClient client) {
+        this.client = client;
+    }
+
+    public Effect sweep(Long round) {
+        var before = System.currentTimeMillis() - stuckAfter.toMillis();
+        return effects().asyncDone(
+            client.forView()
+                .method(OpenTransactionsView::stuck)
+                .invokeAsync(new OpenTransactionsView.Stuck(before, batchSize + 1))
+                .thenCompose(found -> {
+                    var stuck = found.transactions();
+                    var batch = stuck.subList(0, Math.min(batchSize, stuck.size()));
+                    backlog.set(stuck.size());
+                    if (!batch.isEmpty()) log.info("Recovering [{}] stuck transactions.", batch.size());
+                    return Parallel.map(batch, maxParallel, this::recover)
+                        .thenCompose(__ -> {
+                            sweeps.increment();
+                            lastSweep.set(System.currentTimeMillis());
+                            return schedule(timers(), client, round + 1, stuck.size() > batchSize ? batchInterval : interval);
+                        });
+                })
+        );
+    }
+
+    private CompletionStage<TransactionWorkflow.Recovery> recover(OpenTransactionsView.OpenTransaction transaction) {
+        return client.forWorkflow(transaction.txId())
+            .method(TransactionWorkflow::recover)
+            .invokeAsync()
+            .handle((recovery, error) -> {
+                if (error != null) {
+                    log.warn("Recovering stuck transaction [{}] in [{}] failed.", transaction.txId(), transaction.status(), error);
+                    errors.increment();
+                    return null;
+                }
+                recoveries.get(recovery).increment();
+                return recovery;
+            });
+    }
+
+    private static CompletionStage<Done> schedule(TimerScheduler timers, ComponentClient client, long round, Duration delay) {
+        return timers.startSingleTimer(
+            TIMER,
+            delay,
+            client.forTimedAction().method(TransactionSweeper::sweep).deferred(round)
+        );
+    }
+
+}
@@ -1,30 +1,43 @@
 package com.example.transaction.application;
 
+import com.example.account.application.Account;
 import com.example.mock.*;
 import akka.javasdk.workflow.Workflow;
 import akka.javasdk.client.ComponentClient;
 import akka.javasdk.annotations.ComponentId;
 import com.example.transaction.domain.Transaction;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
+import com.example.util.Tracing;
+import com.example.util.TxLog;
 
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.CompletableFuture;
-import java.util.stream.Stream;
+import java.util.concurrent.CompletionStage;
 
 import static com.example.transaction.application.TransactionWorkflow.State.Status.*;
+import static com.example.transaction.application.TransactionWorkflow.State.StepId;
+import static com.example.transaction.application.TransactionWorkflow.State.StepStatus;
 import static com.example.transaction.domain.Transaction.Response.*;
 import static com.example.mock.Validation.Validate;
 import static com.example.mock.Validation.ValidationResult;
 import static com.example.mock.Sanction.Check;
 import static com.example.mock.Sanction.SanctionResult;
 import static com.example.mock.Liquidity.LiquidityResult;
+
 import static java.time.Duration.ofSeconds;
 
 @ComponentId("transaction")
 public class TransactionWorkflow extends Workflow<TransactionWorkflow.State> {
 
-    private static final Logger log = LoggerFactory.getLogger(TransactionWorkflow.class);
+    private static final TxLog txLog = TxLog.getLogger(TransactionWorkflow.class);
 
     final private ComponentClient client;
 
@@ -37,8 +50,13 @@ public class TransactionWorkflow extends Workflow<TransactionWorkflow.State> {
 
         Step validationCheck = step("validate-transaction")
             .asyncCall(Validate.Transaction.class, cmd -> {
-                log.info("Validating Payment Request: {}", cmd);
-                return Validation.validate(cmd, client);
+                StepTimings.begin(cmd.txId(), StepId.VALIDATE_TRANSACTION);
+                txLog.info(cmd.txId(), "Validating Payment Request: {}", cmd);
+                var span = Tracing.span(currentState().trace(), "validate-transaction").attribute("txId", cmd.txId());
+                return span.finish(Deadlines.bound(currentState(), StepId.VALIDATE_TRANSACTION,
+                    () -> Validation.validate(cmd, client, span.context()),
+                    () -> new ValidationResult.Rejected(Deadlines.EXCEEDED)
+                ));
             })
             .andThen(ValidationResult.class, validationResult -> switch(validationResult) {
                 case ValidationResult.Approved __ -> {
@@ -48,30 +66,34 @@ public class TransactionWorkflow extends Workflow<TransactionWorkflow.State> {
                         state.transaction().from(), //checking source account
                         state.transaction().to()    //checking destination account
                     );
-                    log.info("Validation Request Approved: {}", state.txId());
+                    txLog.info(state.txId(), "Validation Request Approved: {}", state.txId());
                     yield effects()
                         .updateState(
-                            state.logStep("validate-transaction", "approved")
-                                 .withStatus(CHECKING_SANCTIONS)
+                            logStep(StepId.VALIDATE_TRANSACTION, StepStatus.APPROVED, CHECKING_SANCTIONS)
                         )
                         .transitionTo("sanction-check", sanctionCheck);
                 }
                 case ValidationResult.Rejected rejected -> {
-                    log.warn("Validation Request Rejected: {}", rejected.reason());
+                    txLog.warn(currentState().txId(), "Validation Request Rejected: {}", rejected.reason());
+                    TransactionMetrics.rejected(StepId.VALIDATE_TRANSACTION, rejected.reason());
                     yield effects()
                         .updateState(
-                            currentState()
-                                .logStep("validate-transaction", "rejected")
-                                .withStatus(VALIDATION_FAILED)
+                            logStep(StepId.VALIDATE_TRANSACTION, StepStatus.REJECTED, VALIDATION_FAILED)
                         )
                         .end();
                 }
-            });
+            })
+            .timeout(StepTimeouts.timeout(StepId.VALIDATE_TRANSACTION));
 
         Step sanctionCheck = step("sanction-check")
             .asyncCall(Check.Accounts.class, cmd -> {
-                log.info("Checking Sanctions: " + cmd);
-                return Sanction.check(cmd);
+                StepTimings.begin(cmd.txId(), StepId.SANCTION_CHECK);
+                txLog.info(cmd.txId(), "Checking Sanctions: {}", cmd);
+                var span = Tracing.span(currentState().trace(), "sanction-check").attribute("txId", cmd.txId());
+                return span.finish(Deadlines.bound(currentState(), StepId.SANCTION_CHECK,
+                    () -> Sanction.check(cmd),
+                    () -> new SanctionResult.Rejected(Deadlines.EXCEEDED)
+                ));
             })
             .andThen(SanctionResult.class, sanctionResult -> switch(sanctionResult) {
                 case SanctionResult.Approved __ -> {
@@ -81,32 +103,46 @@ public class TransactionWorkflow extends Workflow<TransactionWorkflow.State> {
                         state.transaction().from(),
                         state.transaction().amount()
                     );
-                    log.info("Sanction Check Approved");
+                    txLog.info(state.txId(), "Sanction Check Approved: {}", state.txId());
                     yield effects()
                         .updateState(
-                            state.logStep("sanction-check", "approved")
-                                 .withStatus(VERIFYING_LIQUIDITY)
+                            logStep(StepId.SANCTION_CHECK, StepStatus.APPROVED, VERIFYING_LIQUIDITY)
                         )
                         .transitionTo("liquidity-check", liquidityCheck);
                 }
                 case SanctionResult.Rejected rejected -> {
-                    log.warn("Sanction Check Rejected: " + rejected.reason());
+                    txLog.warn(currentState().txId(), "Sanction Check Rejected: {}", rejected.reason());
+                    TransactionMetrics.rejected(StepId.SANCTION_CHECK, rejected.reason());
                     yield effects()
                         .updateState(
-                            currentState()
-                                .logStep("sanction-check", "rejected")
-                                .withStatus(SANCTIONS_FAILED)
+                            logStep(StepId.SANCTION_CHECK, StepStatus.REJECTED, SANCTIONS_FAILED)
                         )
                         .end();
                 }
-            });
+            })
+            .timeout(StepTimeouts.timeout(StepId.SANCTION_CHECK));
 
         Step liquidityCheck = step("liquidity-check")
             .asyncCall(Liquidity.Verify.Funds.class, cmd -> {
-                log.info("Verifying Liquidity: " + cmd);
-                return Liquidity.verify(cmd, client);
+                StepTimings.begin(cmd.txId(), StepId.LIQUIDITY_CHECK);
+                txLog.info(cmd.txId(), "Verifying Liquidity: {}", cmd);
+                var span = Tracing.span(currentState().trace(), "liquidity-check").attribute("txId", cmd.txId());
+                return span.finish(Deadlines.bound(currentState(), StepId.LIQUIDITY_CHECK,
+                    () -> Liquidity.verify(cmd, client, span.context()),
+                    () -> new LiquidityResult.Rejected(Deadlines.EXCEEDED)
+                ));
             })
             .andThen(LiquidityResult.class, liquidityResult -> switch(liquidityResult) {
+                case LiquidityResult.Approved __ when NettingWindow.nets(currentState().processId()) -> {
+                    var state = currentState();
+                    var entry = nettingEntry(state);
+                    txLog.info(state.txId(), "Liquidity Check Approved, netting: {}", state.txId());
+                    yield effects()
+                        .updateState(
+                            logStep(StepId.LIQUIDITY_CHECK, StepStatus.APPROVED, AWAITING_NETTING)
+                        )
+                        .transitionTo("netting", entry);
+                }
                 case LiquidityResult.Approved __ -> {
                     var state = currentState();
                     var postFunds = new Posting.Post.Funds(
@@ -114,30 +150,34 @@ public class TransactionWorkflow extends Workflow<TransactionWorkflow.State> {
                         state.transaction().from(),
                         state.transaction().amount()
                     );
-                    log.info("Liquidity Check Approved");
+                    txLog.info(state.txId(), "Liquidity Check Approved: {}", state.txId());
                     yield effects()
                         .updateState(
-                            state.logStep("liquidity-check", "approved")
-                                 .withStatus(POSTING_TRANSACTION)
+                            logStep(StepId.LIQUIDITY_CHECK, StepStatus.APPROVED, POSTING_TRANSACTION)
                         )
                         .transitionTo("posting-transaction", postFunds);
                 }
                 case LiquidityResult.Rejected rejected -> {
-                    log.warn("Liquidity Check Rejected: " + rejected.reason());
+                    txLog.warn(currentState().txId(), "Liquidity Check Rejected: {}", rejected.reason());
+                    TransactionMetrics.rejected(StepId.LIQUIDITY_CHECK, rejected.reason());
                     yield effects()
                         .updateState(
-                            currentState()
-                                .logStep("liquidity-check", "rejected")
-                                .withStatus(LIQUIDITY_FAILED)
+                            logStep(StepId.LIQUIDITY_CHECK, StepStatus.REJECTED, LIQUIDITY_FAILED)
                         )
                         .end();
                 }
-            });
+            })
+            .timeout(StepTimeouts.timeout(StepId.LIQUIDITY_CHECK));
 
         Step posting = step("posting-transaction")
             .asyncCall(Posting.Post.Funds.class, cmd -> {
-                log.info("Posting Transaction: " + cmd);
-                return Posting.post(cmd, client);
+                StepTimings.begin(cmd.txId(), StepId.POSTING_TRANSACTION);
+                txLog.info(cmd.txId(), "Posting Transaction: {}", cmd);
+                var span = Tracing.span(currentState().trace(), "posting-transaction").attribute("txId", cmd.txId());
+                return span.finish(Deadlines.guard(currentState(), StepId.POSTING_TRANSACTION,
+                    () -> Posting.post(cmd, client, span.context()),
+                    () -> new Posting.PostResult.Rejected(Deadlines.EXCEEDED)
+                ));
             })
             .andThen(Posting.PostResult.class, postingResult -> switch(postingResult) {
                 case Posting.PostResult.Approved __ -> {
@@ -147,43 +187,43 @@ public class TransactionWorkflow extends Workflow<TransactionWorkflow.State> {
                         state.transaction().to(),
                         state.transaction().amount()
                     );
-                    log.info("Transaction Posted");
+                    txLog.info(state.txId(), "Transaction Posted: {}", state.txId());
                     yield effects()
                         .updateState(
-                            currentState()
-                                .logStep("posting-transaction", "approved")
-                                .withStatus(CLEARING_TRANSACTION)
+                            logStep(StepId.POSTING_TRANSACTION, StepStatus.APPROVED, CLEARING_TRANSACTION)
                         )
                         .transitionTo("transaction-clearing", clearing);
                 }
                 case Posting.PostResult.Rejected rejected -> {
-                    log.warn("Transaction Posting Rejected: " + rejected.reason());
+                    txLog.warn(currentState().txId(), "Transaction Posting Rejected: {}", rejected.reason());
+                    TransactionMetrics.rejected(StepId.POSTING_TRANSACTION, rejected.reason());
                     yield effects()
                         .updateState(
-                            currentState()
-                                .logStep("posting-transaction", "rejected")
-                                .withStatus(POSTING_FAILED)
+                            logStep(StepId.POSTING_TRANSACTION, StepStatus.REJECTED, POSTING_FAILED)
                         )
                         .end();
                 }
-            });
+            })
+            .timeout(StepTimeouts.timeout(StepId.POSTING_TRANSACTION));
 
         Step clearing = step("transaction-clearing")
             .asyncCall(Clearing.Clear.Funds.class, cmd -> {
-                log.info("Clearing Transaction: " + cmd);
-                return Clearing.clear(cmd, client);
+                StepTimings.begin(cmd.txId(), StepId.TRANSACTION_CLEARING);
+                txLog.info(cmd.txId(), "Clearing Transaction: {}", cmd);
+                var span = Tracing.span(currentState().trace(), "transaction-clearing").attribute("txId", cmd.txId());
+                return span.finish(Deadlines.guard(currentState(), StepId.TRANSACTION_CLEARING,
+                    () -> Clearing.clear(cmd, client, span.context()),
+                    () -> new Clearing.ClearingResult.Rejected(Deadlines.EXCEEDED)
+                ));
             })
             .andThen(Clearing.ClearingResult.class, clearingResult -> switch(clearingResult) {
                 case Clearing.ClearingResult.Accepted __ -> {
-                    log.info("Transaction Cleared");
+                    txLog.info(currentState().txId(), "Transaction Cleared: {}", currentState().txId());
                     yield effects()
                         .updateState(
-                            currentState()
-                                .logStep("transaction-clearing", "approved")
-                                .complete()
-                                .withStatus(TRANSACTION_COMPLETED)
+                            logStep(StepId.TRANSACTION_CLEARING, StepStatus.APPROVED, TRANSACTION_COMPLETED)
                         )
-                        .transitionTo("log-transaction");
+                        .end();
                 }
                 case Clearing.ClearingResult.Rejected rejected -> {
                     var state = currentState();
@@ -192,97 +232,241 @@ public class TransactionWorkflow extends Workflow<TransactionWorkflow.State> {
                         state.transaction().from(),
                         state.transaction().amount()
                     );
-                    log.warn("Transaction Clearing Rejected: " + rejected.reason());
+                    txLog.warn(state.txId(), "Transaction Clearing Rejected: {}", rejected.reason());
+                    TransactionMetrics.rejected(StepId.TRANSACTION_CLEARING, rejected.reason());
                     yield effects()
                         .updateState(
-                            currentState()
-                                .logStep("transaction-clearing", "rejected")
-                                .withStatus(CLEARING_FAILED)
+                            logStep(StepId.TRANSACTION_CLEARING, StepStatus.REJECTED, CLEARING_FAILED)
                         )
                         .transitionTo("compensate", reversal);
                 }
+            })
+            .timeout(StepTimeouts.timeout(StepId.TRANSACTION_CLEARING));
+
+        Step resolvePosting = step("resolve-posting")
+            .asyncCall(() -> {
+                var state = currentState();
+                StepTimings.begin(state.txId(), StepId.RESOLVE_MOVEMENT);
+                txLog.warn(state.txId(), "Resolving interrupted Posting: {}", state.txId());
+                return fence(state.transaction().from(), Account.Kind.WITHDRAW, state.txId());
+            })
+            .andThen(Boolean.class, applied -> {
+                var state = currentState();
+                if (applied) {
+                    txLog.info(state.txId(), "Interrupted Posting was applied: {}", state.txId());
+                    return effects()
+                        .updateState(logStep(StepId.RESOLVE_MOVEMENT, StepStatus.APPROVED, CLEARING_TRANSACTION))
+                        .transitionTo("transaction-clearing", new Clearing.Clear.Funds(state.txId(), state.transaction().to(), state.transaction().amount()));
+                }
+                txLog.warn(state.txId(), "Interrupted Posting was not applied: {}", state.txId());
+                TransactionMetrics.rejected(StepId.RESOLVE_MOVEMENT, "Posting was not applied");
+                return effects()
+                    .updateState(logStep(StepId.RESOLVE_MOVEMENT, StepStatus.REJECTED, POSTING_FAILED))
+                    .end();
+            })
+            .timeout(StepTimeouts.timeout(StepId.RESOLVE_MOVEMENT));
+
+        Step resolveClearing = step("resolve-clearing")
+            .asyncCall(() -> {
+                var state = currentState();
+                StepTimings.begin(state.txId(), StepId.RESOLVE_MOVEMENT);
+                txLog.warn(state.txId(), "Resolving interrupted Clearing: {}", state.txId());
+                return fence(state.transaction().to(), Account.Kind.DEPOSIT, state.txId());
+            })
+            .andThen(Boolean.class, applied -> {
+                var state = currentState();
+                if (applied) {
+                    txLog.info(state.txId(), "Interrupted Clearing was applied: {}", state.txId());
+                    return effects()
+                        .updateState(logStep(StepId.RESOLVE_MOVEMENT, StepStatus.APPROVED, TRANSACTION_COMPLETED))
+                        .end();
+                }
+                txLog.warn(state.txId(), "Interrupted Clearing was not applied: {}", state.txId());
+                TransactionMetrics.rejected(StepId.RESOLVE_MOVEMENT, "Clearing was not applied");
+                return effects()
+                    .updateState(logStep(StepId.RESOLVE_MOVEMENT, StepStatus.REJECTED, CLEARING_FAILED))
+                    .transitionTo("compensate", new Posting.Post.Reversal(state.txId(), state.transaction().from(), state.transaction().amount()));
+            })
+            .timeout(StepTimeouts.timeout(StepId.RESOLVE_MOVEMENT));
+
+        Step netting = step("netting")
+            .asyncCall(NettingWindow.Entry.class, entry -> {
+                StepTimings.begin(entry.txId(), StepId.NETTING);
+                txLog.info(entry.txId(), "Adding to Netting Window: {}", entry);
+                var pair = NettingWindow.pair(entry.from(), entry.to());
+                return client.forKeyValueEntity(pair)
+                    .method(NettingWindow::add)
+                    .invokeAsync(entry)
+                    .thenCompose(added -> !added.accepted() || !(added.first() || added.full())
+                        ? CompletableFuture.completedStage(added)
+                        : NettingSettler.schedule(timers(), client, pair, added.window(), added.full() ? Duration.ZERO : NettingWindow.window())
+                            .thenApply(__ -> added));
+            })
+            .andThen(NettingWindow.Added.class, added -> {
+                if (added.accepted()) {
+                    // the settler resumes the workflow through netted once the window has been settled
+                    return effects().pause();
+                }
+                var state = currentState();
+                txLog.info(state.txId(), "Netting Window full, posting on its own: {}", state.txId());
+                return effects()
+                    .updateState(logStep(StepId.NETTING, StepStatus.REJECTED, POSTING_TRANSACTION))
+                    .transitionTo("posting-transaction", new Posting.Post.Funds(state.txId(), state.transaction().from(), state.transaction().amount()));
+            });
+
+        Step withdrawNetting = step("withdraw-netting")
+            .asyncCall(NettingWindow.Entry.class, entry -> {
+                StepTimings.begin(entry.txId(), StepId.NETTING);
+                txLog.warn(entry.txId(), "Withdrawing from Netting Window: {}", entry);
+                var pair = NettingWindow.pair(entry.from(), entry.to());
+                return client.forKeyValueEntity(pair)
+                    .method(NettingWindow::withdraw)
+                    .invokeAsync(entry.txId())
+                    .thenCompose(withdrawal -> withdrawal != NettingWindow.Withdrawal.SETTLING
+                        ? CompletableFuture.completedStage(withdrawal)
+                        // a settlement in progress is driven again, in case its timer was lost
+                        : timers().startSingleTimer(
+                            "netting-" + pair + "-settling",
+                            Duration.ZERO,
+                            client.forTimedAction().method(NettingSettler::settle).deferred(pair)
+                        ).thenApply(__ -> withdrawal));
+            })
+            .andThen(NettingWindow.Withdrawal.class, withdrawal -> switch (withdrawal) {
+                case SETTLING -> {
+                    txLog.warn(currentState().txId(), "Netting settlement in progress, awaiting outcome: {}", currentState().txId());
+                    yield effects().pause();
+                }
+                case WITHDRAWN, ABSENT -> {
+                    txLog.warn(currentState().txId(), "Netting timed out: {}", currentState().txId());
+                    TransactionMetrics.rejected(StepId.NETTING, "Netting timed out");
+                    yield effects()
+                        .updateState(logStep(StepId.NETTING, StepStatus.REJECTED, POSTING_FAILED))
+                        .end();
+                }
             });
 
+        Step awaitNetting = step("await-netting")
+            .asyncCall(() -> CompletableFuture.completedStage("awaiting netting..."))
+            // the transfer is left to its settlement or, failing that, to the sweeper
+            .andThen(String.class, __ -> effects().pause());
+
         Step compensate = step("compensate")
             .asyncCall(Posting.Post.Reversal.class, cmd -> {
-                log.info("Compensation");
-                return Posting.reversal(cmd, client);
+                StepTimings.begin(cmd.txId(), StepId.COMPENSATE);
+                txLog.info(cmd.txId(), "Compensation: {}", cmd);
+                var span = Tracing.span(currentState().trace(), "compensate").attribute("txId", cmd.txId());
+                return span.finish(Posting.reversal(cmd, client, span.context()));
             })
             .andThen(Posting.PostResult.class, postingResult -> switch(postingResult) {
                 case Posting.PostResult.Approved __ -> {
-                    log.info("Compensation completed");
+                    txLog.info(currentState().txId(), "Compensation completed: {}", currentState().txId());
                     yield effects()
                         .updateState(
-                            currentState()
-                                .logStep("compensate", "approved")
-                                .complete()
-                                .withStatus(COMPENSATION_COMPLETED)
+                            logStep(StepId.COMPENSATE, StepStatus.APPROVED, COMPENSATION_COMPLETED)
                         )
-                        .transitionTo("log-transaction");
+                        .end();
                 }
                 case Posting.PostResult.Rejected rejected -> {
-                    log.warn("Compensation failed: " + rejected.reason());
+                    txLog.warn(currentState().txId(), "Compensation failed: {}", rejected.reason());
+                    TransactionMetrics.rejected(StepId.COMPENSATE, rejected.reason());
                     yield effects()
                         .updateState(
-                            currentState()
-                                .logStep("compensate", "rejected")
-                                .complete()
-                                .withStatus(TRANSACTION_FAILED)
+                            logStep(StepId.COMPENSATE, StepStatus.REJECTED, TRANSACTION_FAILED)
                         )
-                        .transitionTo("log-transaction");
+                        .end();
                 }
-            });
-
-        Step logger = step("log-transaction")
-            .asyncCall(() -> {
-                log.info("Logging transaction: {}", currentState().txId());
-                var current = currentState();
-                var logEntry = new TransactionLogger.Log.Entry(
-                    current.txId(),
-                    current.processId(),
-                    current.status().name(),
-                    current.started(),
-                    current.ended(),
-                    current.duration()
-                );
-                return client.forKeyValueEntity(current.processId())
-                    .method(TransactionLogger::log)
-                    .invokeAsync(logEntry);
             })
-            .andThen(TransactionLogger.Message.class, response -> {
-                log.info("Transaction logged: {}", response);
-                return effects().end();
-            });
+            .timeout(StepTimeouts.timeout(StepId.COMPENSATE));
 
         Step failoverHandler = step("failover-handler")
             .asyncCall(() -> {
-                log.info("Running workflow failed step for txId: " + currentState().txId());
+                StepTimings.begin(currentState().txId(), StepId.FAILOVER_HANDLER);
+                txLog.warn(currentState().txId(), "Running workflow failed step for txId: {}", currentState().txId());
                 return CompletableFuture.completedStage("handling failure...");
             })
-            .andThen(String.class, __ -> effects()
-                .updateState(
-                    currentState()
-                        .logStep("failover-handler", "handling failure")
-                        .complete()
-                        .withStatus(TRANSACTION_FAILED)
-                )
-                .transitionTo("log-transaction")
-            )
+            .andThen(String.class, __ -> {
+                var state = currentState();
+                if (state.status() == AWAITING_NETTING) {
+                    // the settlement may still move the money, so the transfer is only failed once it is out of its window
+                    return effects()
+                        .updateState(logStep(StepId.FAILOVER_HANDLER, StepStatus.HANDLING_FAILURE, AWAITING_NETTING))
+                        .transitionTo("withdraw-netting", nettingEntry(state));
+                }
+                // posting or clearing may have moved the money before failing, so it is fenced before deciding
+                if (state.status() == POSTING_TRANSACTION) {
+                    return effects()
+                        .updateState(logStep(StepId.FAILOVER_HANDLER, StepStatus.HANDLING_FAILURE, RESOLVING_POSTING))
+                        .transitionTo("resolve-posting");
+                }
+                if (state.status() == CLEARING_TRANSACTION) {
+                    return effects()
+                        .updateState(logStep(StepId.FAILOVER_HANDLER, StepStatus.HANDLING_FAILURE, RESOLVING_CLEARING))
+                        .transitionTo("resolve-clearing");
+                }
+                if (state.status() == RESOLVING_POSTING || state.status() == RESOLVING_CLEARING) {
+                    // the account could not be reached to settle it; the sweeper tries again later
+                    return effects()
+                        .updateState(logStep(StepId.FAILOVER_HANDLER, StepStatus.HANDLING_FAILURE, state.status()))
+                        .pause();
+                }
+                return effects()
+                    .updateState(
+                        logStep(StepId.FAILOVER_HANDLER, StepStatus.HANDLING_FAILURE, TRANSACTION_FAILED)
+                    )
+                    .end();
+            })
             .timeout(ofSeconds(1));
 
         return workflow()
             .timeout(ofSeconds(60))
-            .defaultStepTimeout(ofSeconds(30))
+            .defaultStepTimeout(StepTimeouts.ceiling())
             .failoverTo("failover-handler", maxRetries(0))
             .defaultStepRecoverStrategy(maxRetries(1).failoverTo("failover-handler"))
             .addStep(validationCheck)
             .addStep(sanctionCheck)
             .addStep(liquidityCheck)
             .addStep(posting)
-            .addStep(clearing, maxRetries(2).failoverTo("compensate"))
+            .addStep(clearing, maxRetries(2).failoverTo("failover-handler"))
+            .addStep(resolvePosting, maxRetries(2).failoverTo("failover-handler"))
+            .addStep(resolveClearing, maxRetries(2).failoverTo("failover-handler"))
             .addStep(compensate)
-            .addStep(failoverHandler)
-            .addStep(logger);
+            .addStep(netting)
+            .addStep(withdrawNetting, maxRetries(2).failoverTo("await-netting"))
+            .addStep(awaitNetting)
+            .addStep(failoverHandler);
+    }
+
+    private CompletionStage<Boolean> fence(String account, Account.Kind kind, String txId) {
+        return client.forEventSourcedEntity(account)
+            .method(Account::fence)
+            .invokeAsync(new Account.Command.Fence(kind, txId));
+    }
+
+    private static NettingWindow.Entry nettingEntry(State state) {
+        return new NettingWindow.Entry(state.txId(), state.transaction().from(), state.transaction().to(), state.transaction().amount());
+    }
+
+    private State logStep(StepId step, StepStatus status, State.Status next) {
+        var state = currentState();
+        var attempt = StepTimings.end(state.txId(), step, state.lastFinished());
+        return enter(state.logStep(step, status, attempt.started(), attempt.attempts()), next);
+    }
+
+    private State enter(State logged, State.Status next) {
+        var updated = (next.isTerminal() ? logged.complete() : logged).withStatus(next);
+        TransactionMetrics.entered(updated);
+        if (next.isTerminal()) {
+            TxLog.complete(updated.txId(), next != TRANSACTION_COMPLETED, updated.duration());
+            Tracing.record(
+                updated.trace(),
+                "payment",
+                updated.started(),
+                updated.ended(),
+                Map.of("txId", updated.txId(), "processId", updated.processId(), "status", next.name()),
+                next != TRANSACTION_COMPLETED
+            );
+        }
+        return updated;
     }
 
     /**
@@ -296,7 +480,9 @@ public class TransactionWorkflow extends Workflow<TransactionWorkflow.State> {
 
         if (current != null) return effects().reply(respond(current, Status.DUPLICATE));
 
-        var initialized = State.from(txId, request).withStatus(VALIDATING_REQUEST);
+        var initialized = State.from(txId, request, Tracing.start()).withStatus(VALIDATING_REQUEST);
+        TransactionMetrics.started();
+        TransactionMetrics.entered(initialized);
         var validateRequest = new Validate.Transaction(
             txId,
             request.from(),
@@ -310,6 +496,117 @@ public class TransactionWorkflow extends Workflow<TransactionWorkflow.State> {
             .thenReply(respond(initialized, Status.OK));
     }
 
+    /**
+     * The outcome of the netting window a transfer was settled in, sent by {@link NettingSettler}.
+     * Transfers settle or fail together with their window.
+     */
+    public Effect<String> netted(NettingResult result) {
+        var current = currentState();
+        if (current == null || current.status() != AWAITING_NETTING) return effects().reply("ok");
+
+        if (result.settled()) {
+            txLog.info(current.txId(), "Transaction Settled by Netting: {}", result.settlementId());
+            return effects()
+                .updateState(logStep(StepId.NETTING, StepStatus.APPROVED, TRANSACTION_COMPLETED))
+                .end()
+                .thenReply("ok");
+        }
+        txLog.warn(current.txId(), "Netting Settlement Failed: {}", result.reason());
+        TransactionMetrics.rejected(StepId.NETTING, result.reason());
+        return effects()
+            .updateState(logStep(StepId.NETTING, StepStatus.REJECTED, POSTING_FAILED))
+            .end()
+            .thenReply("ok");
+    }
+
+    public record NettingResult(String settlementId, boolean settled, String reason) {
+
+        static NettingResult settled(String settlementId) {
+            return new NettingResult(settlementId, true, null);
+        }
+
+        static NettingResult failed(String settlementId, String reason) {
+            return new NettingResult(settlementId, false, reason);
+        }
+
+    }
+
+    /**
+     * Moves on a workflow that has made no progress for a while, sent by {@link TransactionSweeper}.
+     *
+     * A workflow that has not moved money yet is resumed from the check it was at, or failed
+     * once it is past its deadline or older than the sweeper's fail-after. An interrupted posting
+     * or clearing is not sent again: the movement is fenced on its account first, which settles
+     * whether it was applied, and the transfer goes on from there, see {@link Account#fence}. A
+     * posting that was applied goes on to clearing and one that was not fails the transfer; a
+     * clearing that was applied completes it and one that was not is compensated, as is a
+     * clearing that was rejected. A transfer awaiting
+     * netting is withdrawn from its window and failed, or, when its window is already being
+     * settled, left to await the outcome while the settlement is driven again.
+     *
+     * The recovery is kept in the step history as a failover handler step, which also marks the
+     * workflow as having made progress so the sweeper leaves it alone while it is resumed.
+     */
+    public Effect<Recovery> recover() {
+        var state = currentState();
+        if (state == null || state.status().isTerminal()) return effects().reply(Recovery.FINISHED);
+
+        var transaction = state.transaction();
+        var expired = state.remaining() <= 0 || System.currentTimeMillis() - state.started() > TransactionSweeper.failAfter().toMillis();
+        var recovered = state.logStep(StepId.FAILOVER_HANDLER, StepStatus.HANDLING_FAILURE, state.lastFinished(), 1);
+        txLog.warn(state.txId(), "Recovering Transaction stuck in: {}", state.status());
+        var checking = switch (state.status()) {
+            case INITIALIZING_TRANSACTION, VALIDATING_REQUEST, CHECKING_SANCTIONS, VERIFYING_LIQUIDITY -> true;
+            default -> false;
+        };
+        if (checking && expired) {
+            TransactionMetrics.rejected(StepId.FAILOVER_HANDLER, "Stuck");
+            return effects()
+                .updateState(enter(recovered, TRANSACTION_FAILED))
+                .end()
+                .thenReply(Recovery.FAILED);
+        }
+        return switch (state.status()) {
+            case INITIALIZING_TRANSACTION, VALIDATING_REQUEST -> effects()
+                .updateState(recovered)
+                .transitionTo("validate-transaction", new Validate.Transaction(state.txId(), transaction.from(), transaction.to(), transaction.amount()))
+                .thenReply(Recovery.RESUMED);
+            case CHECKING_SANCTIONS -> effects()
+                .updateState(recovered)
+                .transitionTo("sanction-check", new Check.Accounts(state.txId(), transaction.from(), transaction.to()))
+                .thenReply(Recovery.RESUMED);
+            case VERIFYING_LIQUIDITY -> effects()
+                .updateState(recovered)
+                .transitionTo("liquidity-check", new Liquidity.Verify.Funds(state.txId(), transaction.from(), transaction.amount()))
+                .thenReply(Recovery.RESUMED);
+            case POSTING_TRANSACTION, RESOLVING_POSTING -> effects()
+                .updateState(enter(recovered, RESOLVING_POSTING))
+                .transitionTo("resolve-posting")
+                .thenReply(Recovery.RESUMED);
+            case CLEARING_TRANSACTION, RESOLVING_CLEARING -> effects()
+                .updateState(enter(recovered, RESOLVING_CLEARING))
+                .transitionTo("resolve-clearing")
+                .thenReply(Recovery.RESUMED);
+            case CLEARING_FAILED -> effects()
+                .updateState(recovered)
+                .transitionTo("compensate", new Posting.Post.Reversal(state.txId(), transaction.from(), transaction.amount()))
+                .thenReply(Recovery.COMPENSATED);
+            case AWAITING_NETTING -> effects()
+                .updateState(recovered)
+                .transitionTo("withdraw-netting", nettingEntry(state))
+                .thenReply(Recovery.RESUMED);
+            default -> effects().reply(Recovery.SKIPPED);
+        };
+    }
+
+    public enum Recovery {
+        RESUMED,
+        COMPENSATED,
+        FAILED,
+        SKIPPED,
+        FINISHED
+    }
+
     public Effect<State> get() {
         if (currentState() == null) {
             return effects().error("transaction not started");
@@ -340,22 +637,266 @@ public class TransactionWorkflow extends Workflow<TransactionWorkflow.State> {
         Long started,
         Long ended,
         Long duration,
-        StepStack history
+        StepStack history,
+        Tracing.TraceContext trace,
+        Long deadline
     ) {
 
         public record Transaction(String from, String to, int amount) {}
 
-        public record StepStack(List<StepEntry> steps) {
+        /**
+         * Compact, append-only step history.
+         *
+         * Each entry packs its {@link StepId} and {@link StepStatus} into a single byte, and the
+         * start and finish times are stored as millisecond offsets from {@link State#started()},
+         * so the history persisted on every state update is a few bytes per step rather than two
+         * strings and a boxed timestamp. The number of attempts a step took, including retries
+         * from the recover strategy, is kept alongside.
+         *
+         * The backing arrays are shared between successive stacks: a push writes into spare
+         * capacity when the slot after this stack's tail is still free and only reallocates
+         * (doubling) when it is not, so appending never copies the whole history. A restored
+         * stack is given its spare capacity up front, so the first push after recovery writes in
+         * place as well. Once {@link #MAX_ENTRIES} is reached the oldest half is folded into
+         * per-step totals of entries, time queued, time spent in the step and attempts, keeping
+         * the state small in retry-heavy workflows while the timing breakdown still adds up.
+         */
+        @JsonIgnoreProperties(ignoreUnknown = true)
+        public static final class StepStack {
+
+            public static final int MAX_ENTRIES = 32;
+
+            private static final int INITIAL_CAPACITY = 8;
+            private static final int STATUS_BITS = 3;
+            private static final int STATUS_MASK = (1 << STATUS_BITS) - 1;
+            // folded totals are kept per step as entries, queued, service and attempts
+            private static final int FOLDED_FIELDS = 4;
+
+            private final byte[] codes;
+            private final int[] started;
+            private final int[] finished;
+            private final byte[] attempts;
+            private final int size;
+            private final int[] folded;
+            private final int foldedUntil;
+
+            public StepStack() {
+                this(new byte[INITIAL_CAPACITY], new int[INITIAL_CAPACITY], new int[INITIAL_CAPACITY], new byte[INITIAL_CAPACITY], 0, null, 0);
+            }
+
+            /**
+             * Restores a persisted stack; {@code overflow} holds the per-step counts of stacks
+             * compacted before the folded totals were kept.
+             */
+            @JsonCreator
+            public static StepStack restore(
+                @JsonProperty("codes") byte[] codes,
+                @JsonProperty("started") int[] started,
+                @JsonProperty("finished") int[] finished,
+                @JsonProperty("attempts") byte[] attempts,
+                @JsonProperty("folded") int[] folded,
+                @JsonProperty("foldedUntil") int foldedUntil,
+                @JsonProperty("overflow") int[] overflow) {
+                var size = codes == null ? 0 : codes.length;
+                var capacity = capacity(size);
+                var finishedOffsets = finished == null ? new int[size] : finished;
+                return new StepStack(
+                    Arrays.copyOf(codes == null ? new byte[0] : codes, capacity),
+                    Arrays.copyOf(started == null ? finishedOffsets : started, capacity),
+                    Arrays.copyOf(finishedOffsets, capacity),
+                    attempts == null ? filled(size, capacity) : Arrays.copyOf(attempts, capacity),
+                    size,
+                    folded != null ? folded : counted(overflow),
+                    foldedUntil
+                );
+            }
+
+            private StepStack(byte[] codes, int[] started, int[] finished, byte[] attempts, int size, int[] folded, int foldedUntil) {
+                this.codes = codes;
+                this.started = started;
+                this.finished = finished;
+                this.attempts = attempts;
+                this.size = size;
+                this.folded = folded;
+                this.foldedUntil = foldedUntil;
+            }
+
+            public StepStack push(StepId step, StepStatus status, int startedOffset, int finishedOffset, int attemptCount) {
+                if (size == MAX_ENTRIES) return compact().push(step, status, startedOffset, finishedOffset, attemptCount);
+                var target = size < codes.length && codes[size] == 0 ? this : grow();
+                target.codes[size] = encode(step, status);
+                target.started[size] = startedOffset;
+                target.finished[size] = finishedOffset;
+                target.attempts[size] = (byte) Math.min(attemptCount, Byte.MAX_VALUE);
+                return new StepStack(target.codes, target.started, target.finished, target.attempts, size + 1, folded, foldedUntil);
+            }
+
+            private StepStack grow() {
+                var capacity = capacity(size);
+                var grownCodes = Arrays.copyOf(codes, capacity);
+                Arrays.fill(grownCodes, size, capacity, (byte) 0);
+                return new StepStack(
+                    grownCodes,
+                    Arrays.copyOf(started, capacity),
+                    Arrays.copyOf(finished, capacity),
+                    Arrays.copyOf(attempts, capacity),
+                    size,
+                    folded,
+                    foldedUntil
+                );
+            }
+
+            /**
+             * Drops the oldest half of the entries, adding them to the folded totals of their step.
+             */
+            private StepStack compact() {
+                var dropped = size / 2;
+                var kept = size - dropped;
+                var totals = Arrays.copyOf(folded == null ? new int[0] : folded, StepId.values().length * FOLDED_FIELDS);
+                for (int i = 0; i < dropped; i++) {
+                    var at = step(i).ordinal() * FOLDED_FIELDS;
+                    totals[at]++;
+                    totals[at + 1] += queued(i);
+                    totals[at + 2] += service(i);
+                    totals[at + 3] += attempts[i];
+                }
+                var keptCodes = new byte[MAX_ENTRIES];
+                var keptStarted = new int[MAX_ENTRIES];
+                var keptFinished = new int[MAX_ENTRIES];
+                var keptAttempts = new byte[MAX_ENTRIES];
+                System.arraycopy(codes, dropped, keptCodes, 0, kept);
+                System.arraycopy(started, dropped, keptStarted, 0, kept);
+                System.arraycopy(finished, dropped, keptFinished, 0, kept);
+                System.arraycopy(attempts, dropped, keptAttempts, 0, kept);
+                return new StepStack(keptCodes, keptStarted, keptFinished, keptAttempts, kept, totals, finished[dropped - 1]);
+            }
+
+            public int size() { return size; }
+
+            public StepId step(int index) { return StepId.values()[(codes[index] >> STATUS_BITS) - 1]; }
+
+            public StepStatus status(int index) { return StepStatus.values()[codes[index] & STATUS_MASK]; }
+
+            public int startedOffset(int index) { return started[index]; }
+
+            public int finishedOffset(int index) { return finished[index]; }
+
+            public int attempts(int index) { return attempts[index]; }
+
+            /**
+             * Time between the previous entry finishing, folded or not, and this one starting.
+             */
+            public int queued(int index) { return Math.max(0, started[index] - (index == 0 ? foldedUntil : finished[index - 1])); }
+
+            public int service(int index) { return finished[index] - started[index]; }
 
-            public StepStack() { this(List.of()); }
+            public int lastFinishedOffset() { return size == 0 ? foldedUntil : finished[size - 1]; }
 
-            public StepStack push(StepEntry step) {
-                return new StepStack(Stream.concat(steps.stream(), Stream.of(step)).toList());
+            public List<StepEntry> entries(long workflowStarted) {
+                var entries = new ArrayList<StepEntry>(size);
+                for (int i = 0; i < size; i++) {
+                    entries.add(new StepEntry(
+                        step(i),
+                        status(i),
+                        workflowStarted + started[i],
+                        workflowStarted + finished[i],
+                        attempts[i]
+                    ));
+                }
+                return entries;
+            }
+
+            /**
+             * The totals of the entries folded away by compaction, one per step that had any, in
+             * {@link StepId} order. They carry no status, as the folded entries may have had several.
+             */
+            public List<StepTiming> foldedTimings() {
+                var timings = new ArrayList<StepTiming>();
+                if (folded == null) return timings;
+                var steps = StepId.values();
+                for (int at = 0; at + FOLDED_FIELDS <= folded.length && at / FOLDED_FIELDS < steps.length; at += FOLDED_FIELDS) {
+                    if (folded[at] == 0) continue;
+                    timings.add(new StepTiming(steps[at / FOLDED_FIELDS], null, folded[at + 1], folded[at + 2], folded[at + 3], folded[at]));
+                }
+                return timings;
+            }
+
+            @JsonProperty("codes")
+            public byte[] codes() { return Arrays.copyOf(codes, size); }
+
+            @JsonProperty("started")
+            public int[] started() { return Arrays.copyOf(started, size); }
+
+            @JsonProperty("finished")
+            public int[] finished() { return Arrays.copyOf(finished, size); }
+
+            @JsonProperty("attempts")
+            public byte[] attempts() { return Arrays.copyOf(attempts, size); }
+
+            @JsonProperty("folded")
+            @JsonInclude(JsonInclude.Include.NON_NULL)
+            public int[] folded() { return folded; }
+
+            @JsonProperty("foldedUntil")
+            @JsonInclude(JsonInclude.Include.NON_DEFAULT)
+            public int foldedUntil() { return foldedUntil; }
+
+            private static int capacity(int size) {
+                return Math.min(Math.max(INITIAL_CAPACITY, size * 2), MAX_ENTRIES);
+            }
+
+            private static byte[] filled(int length, int capacity) {
+                var single = new byte[capacity];
+                Arrays.fill(single, 0, length, (byte) 1);
+                return single;
+            }
+
+            // stacks compacted before folded totals were kept only counted the entries per step
+            private static int[] counted(int[] overflow) {
+                if (overflow == null) return null;
+                var totals = new int[overflow.length * FOLDED_FIELDS];
+                for (int i = 0; i < overflow.length; i++) totals[i * FOLDED_FIELDS] = overflow[i];
+                return totals;
+            }
+
+            // step codes are 1-based so that a zero byte marks a free slot in the shared arrays
+            private static byte encode(StepId step, StepStatus status) {
+                return (byte) (((step.ordinal() + 1) << STATUS_BITS) | status.ordinal());
             }
 
         }
 
-        public record StepEntry(String name, String status, Long finished) {}
+        public record StepEntry(StepId step, StepStatus status, long started, long finished, int attempts) {}
+
+        /**
+         * Per-step latency breakdown: time spent queued between the previous step finishing and
+         * this one starting, and time spent inside the step call across all of its attempts.
+         * Entries folded away by compaction lead the list as one total per step, without a status,
+         * so the steps always add up to the whole history.
+         */
+        public record Timing(String txId, Status status, long duration, List<StepTiming> steps) {}
+
+        public record StepTiming(StepId step, StepStatus status, long queued, long service, int attempts, int entries) {}
+
+        public enum StepId {
+            VALIDATE_TRANSACTION,
+            SANCTION_CHECK,
+            LIQUIDITY_CHECK,
+            POSTING_TRANSACTION,
+            TRANSACTION_CLEARING,
+            COMPENSATE,
+            FAILOVER_HANDLER,
+            // no longer a step, transactions are logged by TransactionLogConsumer; kept so the packed history keeps its ids
+            LOG_TRANSACTION,
+            NETTING,
+            RESOLVE_MOVEMENT
+        }
+
+        public enum StepStatus {
+            APPROVED,
+            REJECTED,
+            HANDLING_FAILURE
+        }
 
         public enum Status {
             INITIALIZING_TRANSACTION,
@@ -369,22 +910,33 @@ public class TransactionWorkflow extends Workflow<TransactionWorkflow.State> {
             CLEARING_FAILED,
             CHECKING_SANCTIONS,
             SANCTIONS_FAILED,
+            AWAITING_NETTING,
+            RESOLVING_POSTING,
+            RESOLVING_CLEARING,
             TRANSACTION_COMPLETED,
             TRANSACTION_FAILED,
-            COMPENSATION_COMPLETED
+            COMPENSATION_COMPLETED;
+
+            public boolean isTerminal() {
+                return switch (this) {
+                    case VALIDATION_FAILED, SANCTIONS_FAILED, LIQUIDITY_FAILED, POSTING_FAILED,
+                         TRANSACTION_COMPLETED, TRANSACTION_FAILED, COMPENSATION_COMPLETED -> true;
+                    default -> false;
+                };
+            }
         }
 
         public State withStatus(Status newStatus) {
-            return new State(txId, processId, transaction, newStatus, started, ended, duration, history);
+            return new State(txId, processId, transaction, newStatus, started, ended, duration, history, trace, deadline);
         }
 
         public State complete() {
             var ended = System.currentTimeMillis();
             var duration = ended - started;
-            return new State(txId, processId, transaction, status, started, ended, duration, history);
+            return new State(txId, processId, transaction, status, started, ended, duration, history, trace, deadline);
         }
 
-        public static State from(String txId, com.example.transaction.domain.Transaction.Request request) {
+        public static State from(String txId, com.example.transaction.domain.Transaction.Request request, Tracing.TraceContext trace) {
             return new State(
                 txId,
                 request.processId(),
@@ -393,11 +945,45 @@ public class TransactionWorkflow extends Workflow<TransactionWorkflow.State> {
                 System.currentTimeMillis(),
                 0L,
                 0L,
-                new StepStack()
+                new StepStack(),
+                trace,
+                request.deadline()
             );
         }
 
-        public State logStep(String stepName, String stepStatus) {
+        @Override
+        public Tracing.TraceContext trace() {
+            return trace == null ? Tracing.TraceContext.NONE : trace;
+        }
+
+        /**
+         * Milliseconds left before the request's deadline, or {@link Long#MAX_VALUE} when it has none.
+         */
+        public long remaining() {
+            return deadline == null ? Long.MAX_VALUE : deadline - System.currentTimeMillis();
+        }
+
+        public long lastFinished() {
+            return started + history.lastFinishedOffset();
+        }
+
+        public Timing timing() {
+            var steps = history.foldedTimings();
+            for (int i = 0; i < history.size(); i++) {
+                steps.add(new StepTiming(
+                    history.step(i),
+                    history.status(i),
+                    history.queued(i),
+                    history.service(i),
+                    history.attempts(i),
+                    1
+                ));
+            }
+            var elapsed = ended > 0 ? duration : System.currentTimeMillis() - started;
+            return new Timing(txId, status, elapsed, steps);
+        }
+
+        public State logStep(StepId step, StepStatus stepStatus, long stepStarted, int attempts) {
             return new State(
                 txId,
                 processId,
@@ -406,7 +992,15 @@ public class TransactionWorkflow extends Workflow<TransactionWorkflow.State> {
                 started,
                 ended,
                 duration,
-                history.push(new StepEntry(stepName, stepStatus, System.currentTimeMillis()))
+                history.push(
+                    step,
+                    stepStatus,
+                    (int) (stepStarted - started),
+                    (int) (System.currentTimeMillis() - started),
+                    attempts
+                ),
+                trace,
+                deadline
             );
         }
 
@@ -11,7 +11,33 @@ import com.fasterxml.jackson.annotation.JsonTypeInfo;
 })
 public sealed interface Transaction {
 
-    record Request(String processId, String from, String to, int amount) implements Transaction {}
+    /**
+     * A payment request. The optional deadline, in epoch milliseconds, is when the payment must have
+     * settled by; once it has passed no further remote calls are started for it. The priority
+     * selects the admission lane, and defaults to INSTANT. The optional executeAt, in epoch
+     * milliseconds, schedules the payment to be started at that time rather than straight away.
+     */
+    record Request(String processId, String from, String to, int amount, Long deadline, Priority priority, Long executeAt) implements Transaction {
+
+        public Request(String processId, String from, String to, int amount) {
+            this(processId, from, to, amount, null, null, null);
+        }
+
+        public Request(String processId, String from, String to, int amount, Long deadline) {
+            this(processId, from, to, amount, deadline, null, null);
+        }
+
+        @Override
+        public Priority priority() {
+            return priority == null ? Priority.INSTANT : priority;
+        }
+
+    }
+
+    enum Priority {
+        INSTANT,    //latency sensitive, admitted ahead of bulk work
+        BULK        //batch work, admitted only into spare capacity
+    }
 
     sealed interface Response extends Transaction {
 
@@ -0,0 +1,41 @@
+package com.example.util;
+
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+public record CallMetrics(String call, LatencyHistogram latency, LongAdder errors) {
+
+    /**
+     * CallMetrics times a remote component call and counts the calls that complete
+     * exceptionally, labelled by the component method being called, ie: Account::withdraw.
+     * When given a trace context, the call is also recorded as a child span.
+     *
+     */
+
+    public static CallMetrics of(String call) {
+        return new CallMetrics(
+            call,
+            Metrics.histogram(
+                "payment_component_call_milliseconds", "Latency of ComponentClient calls by component method.",
+                "call", call),
+            Metrics.counter(
+                "payment_component_call_errors_total", "ComponentClient calls that completed exceptionally.",
+                "call", call)
+        );
+    }
+
+    public <T> CompletionStage<T> time(Tracing.TraceContext trace, Supplier<? extends CompletionStage<T>> call) {
+        var span = Tracing.span(trace, this.call);
+        return span.finish(time(call));
+    }
+
+    public <T> CompletionStage<T> time(Supplier<? extends CompletionStage<T>> call) {
+        var start = System.nanoTime();
+        return call.get().whenComplete((__, ex) -> {
+            latency.record((System.nanoTime() - start) / 1_000_000);
+            if (ex != null) errors.increment();
+        });
+    }
+
+}
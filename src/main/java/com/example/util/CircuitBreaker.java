@@ -0,0 +1,178 @@
+package com.example.util;
+
+import java.util.Comparator;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+public class CircuitBreaker {
+
+    /**
+     * CircuitBreaker isolates callers from a failing component.
+     *
+     * It opens after a run of consecutive failed calls and rejects calls immediately while open.
+     * Once the open period has passed a single trial call is let through (half-open): if it
+     * succeeds the breaker closes, otherwise it opens again. Failures are calls that complete
+     * exceptionally, such as timeouts; a business rejection from the component is a success.
+     *
+     * There is one breaker per target entity, such as an account, shared by all calls to it on
+     * this node, so one failing account is isolated without cutting off every other account.
+     * Looking a breaker up takes no lock. Breakers are kept per component in a map capped at
+     * max-targets; once a new target takes it over the cap, breakers are dropped in the
+     * background down to nine tenths of the cap, closed ones without failures first, and a
+     * dropped breaker comes back closed if its target is called again. The number of breakers
+     * not closed is published per component as payment_circuit_breakers_open, counted when the
+     * gauge is read.
+     *
+     */
+
+    private static final Map<String, Targets> components = new ConcurrentHashMap<>();
+
+    public enum Status {
+        CLOSED,
+        OPEN,
+        HALF_OPEN
+    }
+
+    private record State(Status status, int failures, long openedAt) {}
+
+    private final String component;
+    private final String target;
+    private final int maxFailures;
+    private final long openMillis;
+    private final AtomicReference<State> state = new AtomicReference<>(new State(Status.CLOSED, 0, 0L));
+    private final LongAdder rejected;
+
+    private CircuitBreaker(String component, String target, int maxFailures, long openMillis, LongAdder rejected) {
+        this.component = component;
+        this.target = target;
+        this.maxFailures = maxFailures;
+        this.openMillis = openMillis;
+        this.rejected = rejected;
+    }
+
+    public static CircuitBreaker forTarget(String component, String target, int maxFailures, long openMillis, int maxTargets) {
+        var targets = components.get(component);
+        if (targets == null) {
+            targets = components.computeIfAbsent(component, __ -> new Targets(component, maxFailures, openMillis, maxTargets));
+        }
+        return targets.forTarget(target);
+    }
+
+    public String component() {
+        return component;
+    }
+
+    public String target() {
+        return target;
+    }
+
+    public Status status() {
+        return state.get().status();
+    }
+
+    /**
+     * Whether a call may be made now. When the open period has passed, only the first caller to
+     * ask is allowed through as the trial call; if the trial does not complete within another
+     * open period, a new trial is allowed.
+     */
+    public boolean tryAcquire() {
+        while (true) {
+            var current = state.get();
+            if (current.status() == Status.CLOSED) return true;
+            var now = System.currentTimeMillis();
+            if (now - current.openedAt() < openMillis) {
+                rejected.increment();
+                return false;
+            }
+            if (state.compareAndSet(current, new State(Status.HALF_OPEN, current.failures(), now))) return true;
+        }
+    }
+
+    public void onSuccess() {
+        var current = state.get();
+        if (current.status() == Status.OPEN) return; // a late result from before the breaker opened
+        if (current.status() == Status.HALF_OPEN || current.failures() > 0) {
+            state.compareAndSet(current, new State(Status.CLOSED, 0, 0L));
+        }
+    }
+
+    public void onFailure() {
+        while (true) {
+            var current = state.get();
+            if (current.status() == Status.OPEN) return;
+            var failures = current.failures() + 1;
+            var next = current.status() == Status.HALF_OPEN || failures >= maxFailures
+                ? new State(Status.OPEN, failures, System.currentTimeMillis())
+                : new State(Status.CLOSED, failures, 0L);
+            if (state.compareAndSet(current, next)) return;
+        }
+    }
+
+    private static final class Targets {
+
+        private final String component;
+        private final int maxFailures;
+        private final long openMillis;
+        private final int maxTargets;
+        private final Map<String, CircuitBreaker> breakers = new ConcurrentHashMap<>();
+        private final AtomicBoolean evicting = new AtomicBoolean();
+        private final LongAdder rejected;
+
+        private Targets(String component, int maxFailures, long openMillis, int maxTargets) {
+            this.component = component;
+            this.maxFailures = maxFailures;
+            this.openMillis = openMillis;
+            this.maxTargets = maxTargets;
+            this.rejected = Metrics.counter(
+                "payment_circuit_breaker_rejected_total", "Calls rejected without being made because the circuit breaker was open.",
+                "component", component);
+            Metrics.gauge(
+                "payment_circuit_breakers_open", "Circuit breakers open or half-open, by target component.",
+                () -> breakers.values().stream().filter(breaker -> breaker.status() != Status.CLOSED).count(),
+                "component", component);
+        }
+
+        private CircuitBreaker forTarget(String target) {
+            var breaker = breakers.get(target);
+            if (breaker != null) return breaker;
+            breaker = breakers.computeIfAbsent(target, __ -> new CircuitBreaker(component, target, maxFailures, openMillis, rejected));
+            if (breakers.size() > maxTargets && evicting.compareAndSet(false, true)) {
+                CompletableFuture.runAsync(this::evict);
+            }
+            return breaker;
+        }
+
+        private void evict() {
+            try {
+                var excess = breakers.size() - maxTargets * 9L / 10;
+                if (excess <= 0) return;
+                // a closed breaker without failures comes back as it was, then the failures are the least to lose
+                Comparator<Map.Entry<String, CircuitBreaker>> order = Comparator.comparingInt(
+                    entry -> entry.getValue().status() == Status.CLOSED ? 0 : 1);
+                breakers.entrySet().stream()
+                    .sorted(order.thenComparingInt(entry -> entry.getValue().state.get().failures()))
+                    .limit(excess)
+                    .toList()
+                    .forEach(entry -> breakers.remove(entry.getKey(), entry.getValue()));
+            } finally {
+                evicting.set(false);
+            }
+            // targets added while this sweep ran did not start one of their own
+            if (breakers.size() > maxTargets && evicting.compareAndSet(false, true)) evict();
+        }
+
+    }
+
+    public static class OpenException extends RuntimeException {
+
+        public OpenException(String component, String target) {
+            super("Circuit breaker open for " + component + " " + target);
+        }
+
+    }
+
+}
@@ -0,0 +1,81 @@
+package com.example.util;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class ConcurrencyLimit {
+
+    /**
+     * ConcurrencyLimit caps the number of requests in flight and adapts the cap to observed
+     * latency, so the service sheds load before queues build up instead of after.
+     *
+     * Every completed request reports its latency. A short-term average of those latencies is
+     * compared with a long-term one that stands for the latency of an unloaded service: while
+     * the short-term latency stays within the tolerance of the long-term one the limit grows,
+     * and once it rises above, the limit shrinks in proportion. The limit only grows while the
+     * service is using at least half of it, so a quiet period does not inflate it.
+     *
+     * In-flight requests and the limit are plain atomics; no request ever waits on a lock.
+     *
+     */
+
+    private static final double SHORT_WEIGHT = 0.1;
+    private static final double LONG_WEIGHT = 0.002;
+    private static final double SMOOTHING = 0.2;
+
+    private record State(double limit, double shortNanos, double longNanos) {}
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final double tolerance;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicReference<State> state;
+
+    public ConcurrencyLimit(int initialLimit, int minLimit, int maxLimit, double tolerance) {
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.tolerance = tolerance;
+        this.state = new AtomicReference<>(new State(initialLimit, 0, 0));
+    }
+
+    public int limit() {
+        return (int) state.get().limit();
+    }
+
+    public int inFlight() {
+        return inFlight.get();
+    }
+
+    /**
+     * Takes a place if the limit allows. Every successful call must be followed by exactly one
+     * {@link #release(long)}.
+     */
+    public boolean tryAcquire() {
+        while (true) {
+            var current = inFlight.get();
+            if (current >= limit()) return false;
+            if (inFlight.compareAndSet(current, current + 1)) return true;
+        }
+    }
+
+    public void release(long latencyNanos) {
+        var used = inFlight.getAndDecrement();
+        state.updateAndGet(current -> sample(current, latencyNanos, used));
+    }
+
+    private State sample(State current, long latencyNanos, int used) {
+        if (current.longNanos() == 0) return new State(current.limit(), latencyNanos, latencyNanos);
+        var shortNanos = current.shortNanos() + SHORT_WEIGHT * (latencyNanos - current.shortNanos());
+        var longNanos = current.longNanos() + LONG_WEIGHT * (latencyNanos - current.longNanos());
+        // after a sustained drop in latency, let the baseline catch up quickly
+        if (longNanos > 2 * shortNanos) longNanos *= 0.95;
+
+        var gradient = Math.max(0.5, Math.min(1.0, tolerance * longNanos / shortNanos));
+        if (gradient == 1.0 && used < current.limit() / 2) return new State(current.limit(), shortNanos, longNanos);
+
+        var target = current.limit() * gradient + Math.sqrt(current.limit());
+        var limit = Math.max(minLimit, Math.min(maxLimit, current.limit() * (1 - SMOOTHING) + target * SMOOTHING));
+        return new State(limit, shortNanos, longNanos);
+    }
+
+}
@@ -0,0 +1,161 @@
+package com.example.util;
+
+import akka.http.javadsl.model.ContentTypes;
+import akka.http.javadsl.model.HttpResponse;
+import akka.http.javadsl.model.StatusCodes;
+import akka.http.javadsl.model.headers.RawHeader;
+import akka.javasdk.http.HttpResponses;
+import akka.javasdk.http.RequestContext;
+import com.typesafe.config.Config;
+import com.typesafe.config.ConfigFactory;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+public class EdgeLimits {
+
+    /**
+     * EdgeLimits sheds load at the HTTP endpoints before it reaches the entities and workflows.
+     *
+     * A request is checked, in order, against a token bucket for its processId (when it has one),
+     * a token bucket for its client, and the adaptive concurrency
+     * limit of its endpoint, which tracks the latency of the requests it lets through. A request
+     * over any of them is answered at once with a 429 and a Retry-After header, in whole seconds.
+     *
+     * The client is who the platform says is calling, never a value the caller picks: the
+     * subject of a validated JWT, else the calling service, else the remote address appended by
+     * the ingress to the address header.
+     *
+     * Configured under payment.edge-limits in application.conf.
+     *
+     */
+
+    private static final Config config = ConfigFactory.load().getConfig("payment.edge-limits");
+    private static final boolean enabled = config.getBoolean("enabled");
+    private static final String addressHeader = config.getString("client.address-header");
+    private static final TokenBucket.Keyed processIdBuckets = buckets("process-id");
+    private static final TokenBucket.Keyed clientBuckets = buckets("client");
+    private static final Map<String, Endpoint> endpoints = new ConcurrentHashMap<>();
+
+    private static final String ANONYMOUS = "anonymous";
+
+    private record Endpoint(ConcurrencyLimit limit, LongAdder processIdLimited, LongAdder clientLimited, LongAdder concurrencyLimited) {}
+
+    /**
+     * Runs the call if the request is within limits, and a 429 otherwise.
+     */
+    public static CompletionStage<HttpResponse> guard(
+        String endpoint, RequestContext context, String processId, Supplier<CompletionStage<HttpResponse>> call) {
+
+        if (!enabled) return call.get();
+        var limits = endpoints.computeIfAbsent(endpoint, EdgeLimits::endpoint);
+
+        if (processId != null) {
+            var wait = processIdBuckets.forKey(processId).tryAcquire();
+            if (wait > 0) return reject(limits.processIdLimited(), wait, "Rate limit exceeded for processId " + processId);
+        }
+        var client = client(context);
+        var wait = clientBuckets.forKey(client).tryAcquire();
+        if (wait > 0) return reject(limits.clientLimited(), wait, "Rate limit exceeded for client " + client);
+
+        return limit(limits, call);
+    }
+
+    /**
+     * Runs a request that carries several payments if it is within the endpoint's concurrency
+     * limit, and a 429 otherwise. Its payments are not charged here: each takes its own tokens
+     * through {@link #tryAcquire}.
+     */
+    public static CompletionStage<HttpResponse> guardBatch(String endpoint, Supplier<CompletionStage<HttpResponse>> call) {
+        if (!enabled) return call.get();
+        return limit(endpoints.computeIfAbsent(endpoint, EdgeLimits::endpoint), call);
+    }
+
+    /**
+     * Takes a token for one payment of a request guarded by {@link #guardBatch}, from its
+     * processId's bucket and from its client's. Returns null when allowed, otherwise why not.
+     */
+    public static Limited tryAcquire(String endpoint, RequestContext context, String processId) {
+        if (!enabled) return null;
+        if (processId != null) {
+            var wait = processIdBuckets.forKey(processId).tryAcquire();
+            if (wait > 0) return limited(endpoints.computeIfAbsent(endpoint, EdgeLimits::endpoint).processIdLimited(), wait, "Rate limit exceeded for processId " + processId);
+        }
+        var client = client(context);
+        var wait = clientBuckets.forKey(client).tryAcquire();
+        if (wait > 0) return limited(endpoints.computeIfAbsent(endpoint, EdgeLimits::endpoint).clientLimited(), wait, "Rate limit exceeded for client " + client);
+        return null;
+    }
+
+    public record Limited(long retryAfterSeconds, String message) {}
+
+    private static CompletionStage<HttpResponse> limit(Endpoint limits, Supplier<CompletionStage<HttpResponse>> call) {
+        if (!limits.limit().tryAcquire()) {
+            return reject(limits.concurrencyLimited(), TimeUnit.SECONDS.toNanos(1), "Too many requests in flight");
+        }
+        var started = System.nanoTime();
+        return call.get().whenComplete((response, ex) -> limits.limit().release(System.nanoTime() - started));
+    }
+
+    private static String client(RequestContext context) {
+        var subject = context.getJwtClaims().subject();
+        if (subject.isPresent()) return "subject:" + subject.get();
+        var service = context.getPrincipals().getLocalService();
+        if (service.isPresent()) return "service:" + service.get();
+        // the last address is the one the ingress appended, the ones before it come from the caller
+        return context.requestHeader(addressHeader)
+            .map(header -> {
+                var hops = header.value().split(",");
+                return "address:" + hops[hops.length - 1].trim();
+            })
+            .orElse(ANONYMOUS);
+    }
+
+    private static TokenBucket.Keyed buckets(String scope) {
+        return new TokenBucket.Keyed(config.getDouble(scope + ".rate"), config.getInt(scope + ".burst"), config.getInt("max-keys"));
+    }
+
+    private static CompletionStage<HttpResponse> reject(LongAdder rejected, long waitNanos, String message) {
+        var limited = limited(rejected, waitNanos, message);
+        return CompletableFuture.completedFuture(
+            HttpResponses.of(StatusCodes.TOO_MANY_REQUESTS, ContentTypes.TEXT_PLAIN_UTF8, message.getBytes(StandardCharsets.UTF_8))
+                .addHeader(RawHeader.create("Retry-After", Long.toString(limited.retryAfterSeconds())))
+        );
+    }
+
+    private static Limited limited(LongAdder rejected, long waitNanos, String message) {
+        rejected.increment();
+        return new Limited(Math.max(1, (waitNanos + TimeUnit.SECONDS.toNanos(1) - 1) / TimeUnit.SECONDS.toNanos(1)), message);
+    }
+
+    private static Endpoint endpoint(String endpoint) {
+        var limit = new ConcurrencyLimit(
+            config.getInt("concurrency.initial-limit"),
+            config.getInt("concurrency.min-limit"),
+            config.getInt("concurrency.max-limit"),
+            config.getDouble("concurrency.latency-tolerance")
+        );
+        Metrics.gauge(
+            "payment_edge_concurrency_limit", "Current adaptive concurrency limit, by endpoint.",
+            limit::limit,
+            "endpoint", endpoint);
+        Metrics.gauge(
+            "payment_edge_in_flight", "Requests in flight under the concurrency limit, by endpoint.",
+            limit::inFlight,
+            "endpoint", endpoint);
+        return new Endpoint(limit, rejected(endpoint, "process-id"), rejected(endpoint, "client"), rejected(endpoint, "concurrency"));
+    }
+
+    private static LongAdder rejected(String endpoint, String reason) {
+        return Metrics.counter(
+            "payment_edge_rejected_total", "Requests rejected with 429 at the HTTP edge, by endpoint and limit hit.",
+            "endpoint", endpoint, "reason", reason);
+    }
+
+}
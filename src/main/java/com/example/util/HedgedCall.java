@@ -0,0 +1,149 @@
+package com.example.util;
+
+import com.typesafe.config.Config;
+import com.typesafe.config.ConfigFactory;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
+import java.util.function.Supplier;
+
+public final class HedgedCall {
+
+    /**
+     * HedgedCall cuts the tail latency of idempotent reads by sending a second, identical call
+     * when the first has not replied within a high percentile of the call's recent latency.
+     * The first successful reply wins and the other is ignored; the call fails only if every
+     * call sent fails.
+     *
+     * The percentile is taken over the latency of first calls in a rolling window, kept as the
+     * current and the previous window, so the delay follows the target as it speeds up or slows
+     * down instead of being anchored by everything it has ever done.
+     *
+     * Hedges are paid for from a token bucket shared by all hedged calls on this node: every
+     * call adds max-hedge-ratio of a token and every hedge spends one, so hedging can never add
+     * more than that fraction of extra load, however slow the target gets.
+     *
+     * Only ever use it for reads: a hedged withdraw or deposit would move money twice.
+     *
+     * Configured under payment.hedging in application.conf.
+     *
+     */
+
+    private static final Config config = ConfigFactory.load().getConfig("payment.hedging");
+    private static final boolean enabled = config.getBoolean("enabled");
+    private static final double percentile = config.getDouble("percentile");
+    private static final long minDelayMillis = config.getDuration("min-delay").toMillis();
+    private static final long minSamples = config.getLong("min-samples");
+    private static final long refreshMillis = config.getDuration("refresh-interval").toMillis();
+    private static final long windowMillis = config.getDuration("window").toMillis();
+
+    private static final long MILLI_TOKENS = 1000;
+    private static final long tokensPerCall = Math.round(config.getDouble("max-hedge-ratio") * MILLI_TOKENS);
+    private static final long maxTokens = config.getLong("max-burst") * MILLI_TOKENS;
+    private static final AtomicLong tokens = new AtomicLong(0);
+
+    private final AtomicReference<Window> window =
+        new AtomicReference<>(new Window(new LatencyHistogram(), new LatencyHistogram(), System.currentTimeMillis()));
+    private final LongAdder sent;
+    private final LongAdder won;
+    private volatile long delayMillis = -1;
+    private volatile long refreshedAt = 0;
+
+    private HedgedCall(String call) {
+        this.sent = Metrics.counter(
+            "payment_hedged_calls_total", "Hedge calls sent for slow reads, and those whose reply won.",
+            "call", call, "outcome", "sent");
+        this.won = Metrics.counter(
+            "payment_hedged_calls_total", "Hedge calls sent for slow reads, and those whose reply won.",
+            "call", call, "outcome", "won");
+    }
+
+    /**
+     * Hedges a read, labelling its hedge metrics with the call of its metrics.
+     */
+    public static HedgedCall of(CallMetrics metrics) {
+        return new HedgedCall(metrics.call());
+    }
+
+    public <T> CompletionStage<T> execute(Supplier<? extends CompletionStage<T>> call) {
+        if (!enabled) return call.get();
+        tokens.getAndUpdate(current -> Math.min(maxTokens, current + tokensPerCall));
+
+        var delay = delay();
+        var start = System.nanoTime();
+        var primary = call.get();
+        primary.whenComplete((__, ex) -> record((System.nanoTime() - start) / 1_000_000));
+        if (delay < 0) return primary;
+
+        var result = new CompletableFuture<T>();
+        var outstanding = new AtomicInteger(1);
+        primary.whenComplete(reply(result, outstanding, false));
+
+        CompletableFuture.delayedExecutor(delay, TimeUnit.MILLISECONDS).execute(() -> {
+            if (result.isDone() || !acquireToken()) return;
+            outstanding.incrementAndGet();
+            sent.increment();
+            call.get().whenComplete(reply(result, outstanding, true));
+        });
+        return result;
+    }
+
+    private <T> BiConsumer<T, Throwable> reply(CompletableFuture<T> result, AtomicInteger outstanding, boolean hedge) {
+        return (value, ex) -> {
+            if (ex == null) {
+                if (result.complete(value) && hedge) won.increment();
+            } else if (outstanding.decrementAndGet() == 0) {
+                result.completeExceptionally(ex);
+            }
+        };
+    }
+
+    private static boolean acquireToken() {
+        while (true) {
+            var current = tokens.get();
+            if (current < MILLI_TOKENS) return false;
+            if (tokens.compareAndSet(current, current - MILLI_TOKENS)) return true;
+        }
+    }
+
+    private void record(long millis) {
+        var now = System.currentTimeMillis();
+        var current = window.get();
+        if (now - current.started() >= windowMillis) {
+            var rotated = new Window(new LatencyHistogram(), current.current(), now);
+            current = window.compareAndSet(current, rotated) ? rotated : window.get();
+        }
+        current.current().record(millis);
+    }
+
+    /**
+     * The hedge delay, refreshed from the latency windows at most once per refresh interval;
+     * negative while there are too few samples to hedge.
+     */
+    private long delay() {
+        var now = System.currentTimeMillis();
+        if (now - refreshedAt >= refreshMillis) {
+            var snapshot = snapshot(now);
+            delayMillis = snapshot.count() < minSamples ? -1 : Math.max(minDelayMillis, snapshot.percentile(percentile));
+            refreshedAt = now;
+        }
+        return delayMillis;
+    }
+
+    private LatencyHistogram.Snapshot snapshot(long now) {
+        var current = window.get();
+        var age = now - current.started();
+        if (age >= 2 * windowMillis) return new LatencyHistogram().snapshot();
+        var snapshot = current.current().snapshot();
+        return age >= windowMillis ? snapshot : snapshot.plus(current.previous().snapshot());
+    }
+
+    private record Window(LatencyHistogram current, LatencyHistogram previous, long started) {}
+
+}
@@ -0,0 +1,90 @@
+package com.example.util;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+public class LatencyHistogram {
+
+    /**
+     * LatencyHistogram is a lock-free, fixed-bucket histogram of millisecond latencies.
+     *
+     * Recording is a binary search over the bucket bounds and a LongAdder increment, so it
+     * can sit on the hot path of every workflow step without contention. Percentiles are
+     * estimated from a snapshot by interpolating inside the bucket the rank falls into.
+     *
+     */
+
+    public static final long[] BOUNDS = {
+        1, 2, 3, 5, 7, 10, 15, 20, 30, 50, 75, 100, 150, 200, 300, 500, 750,
+        1_000, 1_500, 2_000, 3_000, 5_000, 7_500, 10_000, 15_000, 20_000, 30_000, 60_000
+    };
+
+    private final LongAdder[] buckets = new LongAdder[BOUNDS.length + 1];
+    private final LongAdder sum = new LongAdder();
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0L);
+
+    public LatencyHistogram() {
+        for (int i = 0; i < buckets.length; i++) buckets[i] = new LongAdder();
+    }
+
+    public void record(long millis) {
+        var value = Math.max(0L, millis);
+        buckets[bucketOf(value)].increment();
+        sum.add(value);
+        max.accumulate(value);
+    }
+
+    public Snapshot snapshot() {
+        var counts = new long[buckets.length];
+        long count = 0;
+        for (int i = 0; i < buckets.length; i++) {
+            counts[i] = buckets[i].sum();
+            count += counts[i];
+        }
+        return new Snapshot(counts, count, sum.sum(), max.get());
+    }
+
+    private static int bucketOf(long value) {
+        var index = Arrays.binarySearch(BOUNDS, value);
+        return index >= 0 ? index : -index - 1;
+    }
+
+    public record Snapshot(long[] counts, long count, long sum, long max) {
+
+        public long mean() {
+            return count == 0 ? 0 : sum / count;
+        }
+
+        public long percentile(double quantile) {
+            if (count == 0) return 0;
+            var rank = Math.max(1L, (long) Math.ceil(quantile * count));
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                if (counts[i] == 0) continue;
+                if (seen + counts[i] >= rank) {
+                    var lower = i == 0 ? 0 : BOUNDS[i - 1];
+                    var upper = i < BOUNDS.length ? BOUNDS[i] : max;
+                    var fraction = (double) (rank - seen) / counts[i];
+                    return Math.min(max, lower + Math.round((upper - lower) * fraction));
+                }
+                seen += counts[i];
+            }
+            return max;
+        }
+
+        public Snapshot plus(Snapshot other) {
+            var merged = new long[counts.length];
+            for (int i = 0; i < counts.length; i++) merged[i] = counts[i] + other.counts[i];
+            return new Snapshot(merged, count + other.count, sum + other.sum, Math.max(max, other.max));
+        }
+
+        public Summary summary() {
+            return new Summary(count, mean(), percentile(0.5), percentile(0.9), percentile(0.99), max);
+        }
+
+    }
+
+    public record Summary(long count, long mean, long p50, long p90, long p99, long max) {}
+
+}
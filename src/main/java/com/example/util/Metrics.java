@@ -0,0 +1,105 @@
+package com.example.util;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+public class Metrics {
+
+    /**
+     * Metrics is a process-wide registry of counters, gauges and latency histograms, rendered
+     * in the Prometheus text exposition format.
+     *
+     * Series are created once and cached by name and labels; callers on hot paths should keep
+     * the returned LongAdder or LatencyHistogram rather than looking it up on every call.
+     * Recording never takes a lock.
+     *
+     */
+
+    private static final Map<String, Family> families = new ConcurrentSkipListMap<>();
+
+    public static LongAdder counter(String name, String help, String... labels) {
+        return (LongAdder) family(name, Type.COUNTER, help).series
+            .computeIfAbsent(labels(labels), __ -> new LongAdder());
+    }
+
+    public static LatencyHistogram histogram(String name, String help, String... labels) {
+        return (LatencyHistogram) family(name, Type.HISTOGRAM, help).series
+            .computeIfAbsent(labels(labels), __ -> new LatencyHistogram());
+    }
+
+    public static void gauge(String name, String help, LongSupplier value, String... labels) {
+        family(name, Type.GAUGE, help).series.put(labels(labels), value);
+    }
+
+    public static String scrape() {
+        var out = new StringBuilder(4096);
+        families.forEach((name, family) -> {
+            out.append("# HELP ").append(name).append(' ').append(family.help).append('\n');
+            out.append("# TYPE ").append(name).append(' ').append(family.type.name().toLowerCase()).append('\n');
+            family.series.forEach((labels, metric) -> {
+                switch (metric) {
+                    case LongAdder counter -> sample(out, name, labels, counter.sum());
+                    case LongSupplier gauge -> sample(out, name, labels, gauge.getAsLong());
+                    case LatencyHistogram histogram -> renderHistogram(out, name, labels, histogram.snapshot());
+                    default -> {}
+                }
+            });
+        });
+        return out.toString();
+    }
+
+    private static void renderHistogram(StringBuilder out, String name, String labels, LatencyHistogram.Snapshot snapshot) {
+        long cumulative = 0;
+        for (int i = 0; i < LatencyHistogram.BOUNDS.length; i++) {
+            cumulative += snapshot.counts()[i];
+            sample(out, name + "_bucket", withLabel(labels, "le", Long.toString(LatencyHistogram.BOUNDS[i])), cumulative);
+        }
+        sample(out, name + "_bucket", withLabel(labels, "le", "+Inf"), snapshot.count());
+        sample(out, name + "_sum", labels, snapshot.sum());
+        sample(out, name + "_count", labels, snapshot.count());
+    }
+
+    private static void sample(StringBuilder out, String name, String labels, long value) {
+        out.append(name);
+        if (!labels.isEmpty()) out.append('{').append(labels).append('}');
+        out.append(' ').append(value).append('\n');
+    }
+
+    private static String withLabel(String labels, String key, String value) {
+        var label = key + "=\"" + value + "\"";
+        return labels.isEmpty() ? label : labels + "," + label;
+    }
+
+    private static String labels(String... pairs) {
+        if (pairs.length == 0) return "";
+        var out = new StringBuilder();
+        for (int i = 0; i + 1 < pairs.length; i += 2) {
+            if (i > 0) out.append(',');
+            out.append(pairs[i]).append("=\"").append(escape(pairs[i + 1])).append('"');
+        }
+        return out.toString();
+    }
+
+    private static String escape(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+
+    private static Family family(String name, Type type, String help) {
+        var family = families.computeIfAbsent(name, __ -> new Family(type, help, new ConcurrentSkipListMap<>()));
+        if (family.type != type) {
+            throw new IllegalArgumentException("Metric [" + name + "] already registered as " + family.type);
+        }
+        return family;
+    }
+
+    private record Family(Type type, String help, Map<String, Object> series) {}
+
+    private enum Type {
+        COUNTER,
+        GAUGE,
+        HISTOGRAM
+    }
+
+}
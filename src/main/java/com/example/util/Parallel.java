@@ -0,0 +1,42 @@
+package com.example.util;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Function;
+import java.util.stream.IntStream;
+
+public final class Parallel {
+
+    /**
+     * Parallel runs an asynchronous call for every item of a list with at most a given number of
+     * calls outstanding at once, and collects the results in the order of the items.
+     *
+     */
+
+    private Parallel() {}
+
+    public static <T, R> CompletionStage<List<R>> map(List<T> items, int limit, Function<T, CompletionStage<R>> call) {
+        var results = new AtomicReferenceArray<R>(items.size());
+        var next = new AtomicInteger();
+        var workers = IntStream.range(0, Math.max(1, Math.min(limit, items.size())))
+            .mapToObj(__ -> work(items, call, results, next).toCompletableFuture())
+            .toArray(CompletableFuture[]::new);
+        return CompletableFuture.allOf(workers)
+            .thenApply(__ -> IntStream.range(0, items.size()).mapToObj(results::get).toList());
+    }
+
+    // each worker takes the next item as soon as its previous call completes
+    private static <T, R> CompletionStage<Void> work(
+        List<T> items, Function<T, CompletionStage<R>> call, AtomicReferenceArray<R> results, AtomicInteger next) {
+
+        var index = next.getAndIncrement();
+        if (index >= items.size()) return CompletableFuture.completedFuture(null);
+        return call.apply(items.get(index))
+            .thenAccept(result -> results.set(index, result))
+            .thenCompose(__ -> work(items, call, results, next));
+    }
+
+}
@@ -0,0 +1,111 @@
+package com.example.util;
+
+import com.typesafe.config.Config;
+import com.typesafe.config.ConfigFactory;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+public record ResilientCall(String call, String component, Backoff backoff, LongAdder retries) {
+
+    /**
+     * ResilientCall guards a remote component call with the circuit breaker of its target
+     * entity and, for calls that are safe to repeat, retries with exponential backoff and full
+     * jitter.
+     *
+     * Retries happen inside a single workflow step attempt, so a transient failure costs a short
+     * randomised pause rather than a rerun of the whole step, and the jitter spreads retries from
+     * many workflows instead of sending them to a struggling entity in one burst. Calls rejected
+     * by an open breaker fail at once and are not retried.
+     *
+     * Configured under payment.resilience in application.conf.
+     *
+     */
+
+    private static final Config config = ConfigFactory.load().getConfig("payment.resilience");
+    private static final int maxFailures = config.getInt("circuit-breaker.max-failures");
+    private static final long openMillis = config.getDuration("circuit-breaker.open-for").toMillis();
+    private static final int maxTargets = config.getInt("circuit-breaker.max-targets");
+    private static final Backoff retry = new Backoff(
+        config.getInt("retry.max-attempts"),
+        config.getDuration("retry.initial-backoff").toMillis(),
+        config.getDuration("retry.max-backoff").toMillis(),
+        config.getDouble("retry.multiplier")
+    );
+
+    public record Backoff(int maxAttempts, long initialMillis, long maxMillis, double multiplier) {
+
+        public static final Backoff NONE = new Backoff(1, 0, 0, 1.0);
+
+        long delay(int attempt) {
+            var ceiling = Math.min(maxMillis, initialMillis * Math.pow(multiplier, attempt - 1));
+            return (long) (ThreadLocalRandom.current().nextDouble() * ceiling);
+        }
+
+    }
+
+    /**
+     * A call that is safe to repeat, such as a read: retried with backoff.
+     */
+    public static ResilientCall retryable(String call, String component) {
+        return of(call, component, retry);
+    }
+
+    /**
+     * A call that must not be repeated blindly, such as a command with side effects and no
+     * idempotency key: guarded by the breaker only.
+     */
+    public static ResilientCall once(String call, String component) {
+        return of(call, component, Backoff.NONE);
+    }
+
+    private static ResilientCall of(String call, String component, Backoff backoff) {
+        return new ResilientCall(
+            call,
+            component,
+            backoff,
+            Metrics.counter(
+                "payment_component_call_retries_total", "ComponentClient calls retried after failing.",
+                "call", call)
+        );
+    }
+
+    /**
+     * Makes the call to the given target entity, such as an account id, through its breaker.
+     */
+    public <T> CompletionStage<T> execute(String target, Supplier<? extends CompletionStage<T>> call) {
+        return attempt(CircuitBreaker.forTarget(component, target, maxFailures, openMillis, maxTargets), call, 1);
+    }
+
+    private <T> CompletionStage<T> attempt(CircuitBreaker breaker, Supplier<? extends CompletionStage<T>> call, int attempt) {
+        if (!breaker.tryAcquire()) {
+            return CompletableFuture.failedFuture(new CircuitBreaker.OpenException(breaker.component(), breaker.target()));
+        }
+        return call.get()
+            .handle((result, ex) -> {
+                if (ex == null) {
+                    breaker.onSuccess();
+                    return CompletableFuture.completedFuture(result);
+                }
+                breaker.onFailure();
+                if (attempt >= backoff.maxAttempts() || unwrap(ex) instanceof CircuitBreaker.OpenException) {
+                    return CompletableFuture.<T>failedFuture(ex);
+                }
+                retries.increment();
+                var executor = CompletableFuture.delayedExecutor(backoff.delay(attempt), TimeUnit.MILLISECONDS);
+                return CompletableFuture.supplyAsync(() -> null, executor)
+                    .thenCompose(__ -> attempt(breaker, call, attempt + 1));
+            })
+            .thenCompose(stage -> stage);
+    }
+
+    private static Throwable unwrap(Throwable ex) {
+        return ex instanceof CompletionException && ex.getCause() != null ? ex.getCause() : ex;
+    }
+
+}
@@ -0,0 +1,168 @@
+package com.example.util;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.typesafe.config.Config;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+public class SpanExporter {
+
+    /**
+     * SpanExporter writes finished spans as OpenTelemetry OTLP/JSON, one ExportTraceServiceRequest
+     * per line, either to a local file or to the logger, standing in for a collector.
+     *
+     * Spans are queued and written in batches by a single background thread, so exporting never
+     * blocks a workflow step; when the queue is full spans are dropped and counted.
+     *
+     */
+
+    private static final Logger log = LoggerFactory.getLogger(SpanExporter.class);
+
+    private static final int MAX_BATCH = 512;
+
+    private static final JsonFactory json = new JsonFactory();
+
+    private static final LongAdder dropped = Metrics.counter(
+        "payment_trace_spans_dropped_total", "Spans dropped because the export queue was full.");
+    private static final LongAdder exported = Metrics.counter(
+        "payment_trace_spans_exported_total", "Spans written by the span exporter.");
+
+    private final BlockingQueue<Tracing.SpanData> queue;
+    private final Target target;
+    private final String serviceName;
+
+    private SpanExporter(int queueSize, Target target, String serviceName) {
+        this.queue = new ArrayBlockingQueue<>(queueSize);
+        this.target = target;
+        this.serviceName = serviceName;
+    }
+
+    public static SpanExporter create(Config config) {
+        var target = switch (config.getString("exporter")) {
+            case "file" -> Target.file(Path.of(config.getString("export-path")));
+            case "log" -> Target.LOG;
+            default -> Target.NONE;
+        };
+        var exporter = new SpanExporter(config.getInt("queue-size"), target, config.getString("service-name"));
+        if (target != Target.NONE) {
+            var thread = new Thread(exporter::run, "span-exporter");
+            thread.setDaemon(true);
+            thread.start();
+        }
+        return exporter;
+    }
+
+    public void export(Tracing.SpanData span) {
+        if (target == Target.NONE) return;
+        if (!queue.offer(span)) dropped.increment();
+    }
+
+    private void run() {
+        var batch = new ArrayList<Tracing.SpanData>(MAX_BATCH);
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                var first = queue.poll(1, TimeUnit.SECONDS);
+                if (first == null) continue;
+                batch.add(first);
+                queue.drainTo(batch, MAX_BATCH - 1);
+                target.write(toOtlpJson(batch));
+                exported.add(batch.size());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (Exception e) {
+                log.warn("Failed to export {} spans: {}", batch.size(), e.getMessage());
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private String toOtlpJson(List<Tracing.SpanData> spans) throws IOException {
+        var out = new StringWriter(256 * spans.size());
+        try (JsonGenerator gen = json.createGenerator(out)) {
+            gen.writeStartObject();
+            gen.writeArrayFieldStart("resourceSpans");
+            gen.writeStartObject();
+            gen.writeObjectFieldStart("resource");
+            gen.writeArrayFieldStart("attributes");
+            attribute(gen, "service.name", serviceName);
+            gen.writeEndArray();
+            gen.writeEndObject();
+            gen.writeArrayFieldStart("scopeSpans");
+            gen.writeStartObject();
+            gen.writeObjectFieldStart("scope");
+            gen.writeStringField("name", "com.example.payment");
+            gen.writeEndObject();
+            gen.writeArrayFieldStart("spans");
+            for (Tracing.SpanData span : spans) {
+                gen.writeStartObject();
+                gen.writeStringField("traceId", span.traceId());
+                gen.writeStringField("spanId", span.spanId());
+                if (!span.parentSpanId().isEmpty()) gen.writeStringField("parentSpanId", span.parentSpanId());
+                gen.writeStringField("name", span.name());
+                gen.writeNumberField("kind", span.parentSpanId().isEmpty() ? 2 : 3); // SERVER for the root, CLIENT for calls
+                gen.writeStringField("startTimeUnixNano", Long.toString(span.startMillis() * 1_000_000));
+                gen.writeStringField("endTimeUnixNano", Long.toString(span.endMillis() * 1_000_000));
+                gen.writeArrayFieldStart("attributes");
+                for (var attribute : span.attributes().entrySet()) attribute(gen, attribute.getKey(), attribute.getValue());
+                gen.writeEndArray();
+                gen.writeObjectFieldStart("status");
+                gen.writeNumberField("code", span.error() ? 2 : 1); // STATUS_CODE_ERROR / STATUS_CODE_OK
+                gen.writeEndObject();
+                gen.writeEndObject();
+            }
+            gen.writeEndArray();
+            gen.writeEndObject();
+            gen.writeEndArray();
+            gen.writeEndObject();
+            gen.writeEndArray();
+            gen.writeEndObject();
+        }
+        return out.toString();
+    }
+
+    private static void attribute(JsonGenerator gen, String key, String value) throws IOException {
+        gen.writeStartObject();
+        gen.writeStringField("key", key);
+        gen.writeObjectFieldStart("value");
+        gen.writeStringField("stringValue", value);
+        gen.writeEndObject();
+        gen.writeEndObject();
+    }
+
+    private interface Target {
+
+        Target NONE = line -> {};
+
+        Target LOG = line -> log.info(line);
+
+        void write(String line) throws IOException;
+
+        static Target file(Path path) {
+            return line -> {
+                if (path.getParent() != null) Files.createDirectories(path.getParent());
+                try (Writer writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+                    writer.write(line);
+                    writer.write('\n');
+                }
+            };
+        }
+
+    }
+
+}
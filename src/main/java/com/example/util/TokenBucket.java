@@ -0,0 +1,104 @@
+package com.example.util;
+
+import java.util.Comparator;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class TokenBucket {
+
+    /**
+     * TokenBucket is a lock-free rate limiter: tokens refill continuously at a fixed rate up to
+     * the burst size, and each request takes one. The bucket's state is a single immutable value
+     * swapped by compare-and-set, so checking it on every request costs one read and, when a
+     * token is taken, one CAS.
+     *
+     * Buckets are kept per key, such as a processId or a client, in a {@link Keyed} map capped at
+     * max-keys. Looking a bucket up takes no lock. Once a new key takes the map over its cap,
+     * the fullest buckets, then those used longest ago, are dropped in the background down to
+     * nine tenths of the cap, so a caller cycling through keys cannot grow the map and only one
+     * new key in every tenth of the cap starts a sweep. A dropped bucket comes back full, which
+     * an idle one would have been anyway.
+     *
+     */
+
+    private record State(double tokens, long refilledAt) {}
+
+    private final double tokensPerNano;
+    private final double burst;
+    private final AtomicReference<State> state;
+
+    private TokenBucket(double perSecond, int burst) {
+        this.tokensPerNano = perSecond / TimeUnit.SECONDS.toNanos(1);
+        this.burst = burst;
+        this.state = new AtomicReference<>(new State(burst, System.nanoTime()));
+    }
+
+    /**
+     * Takes a token if one is available. Returns 0 when it did, otherwise the nanoseconds until
+     * the next token is due.
+     */
+    public long tryAcquire() {
+        while (true) {
+            var current = state.get();
+            var now = System.nanoTime();
+            var tokens = available(current, now);
+            if (tokens < 1) return (long) Math.ceil((1 - tokens) / tokensPerNano);
+            if (state.compareAndSet(current, new State(tokens - 1, now))) return 0;
+        }
+    }
+
+    private double available(State current, long now) {
+        return Math.min(burst, current.tokens() + (now - current.refilledAt()) * tokensPerNano);
+    }
+
+    public static final class Keyed {
+
+        private final double perSecond;
+        private final int burst;
+        private final int maxKeys;
+        private final Map<String, TokenBucket> buckets = new ConcurrentHashMap<>();
+        private final AtomicBoolean evicting = new AtomicBoolean();
+
+        public Keyed(double perSecond, int burst, int maxKeys) {
+            this.perSecond = perSecond;
+            this.burst = burst;
+            this.maxKeys = maxKeys;
+        }
+
+        public TokenBucket forKey(String key) {
+            var bucket = buckets.get(key);
+            if (bucket != null) return bucket;
+            bucket = buckets.computeIfAbsent(key, __ -> new TokenBucket(perSecond, burst));
+            if (buckets.size() > maxKeys && evicting.compareAndSet(false, true)) {
+                CompletableFuture.runAsync(this::evict);
+            }
+            return bucket;
+        }
+
+        private void evict() {
+            try {
+                var excess = buckets.size() - maxKeys * 9L / 10;
+                if (excess <= 0) return;
+                var now = System.nanoTime();
+                // the fullest buckets first, as dropping one that has refilled loses nothing, then the longest unused
+                Comparator<Map.Entry<String, TokenBucket>> order = Comparator.comparingDouble(
+                    entry -> -entry.getValue().available(entry.getValue().state.get(), now));
+                buckets.entrySet().stream()
+                    .sorted(order.thenComparingLong(entry -> entry.getValue().state.get().refilledAt() - now))
+                    .limit(excess)
+                    .toList()
+                    .forEach(entry -> buckets.remove(entry.getKey(), entry.getValue()));
+            } finally {
+                evicting.set(false);
+            }
+            // keys added while this sweep ran did not start one of their own
+            if (buckets.size() > maxKeys && evicting.compareAndSet(false, true)) evict();
+        }
+
+    }
+
+}
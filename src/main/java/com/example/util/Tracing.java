@@ -0,0 +1,126 @@
+package com.example.util;
+
+import com.typesafe.config.Config;
+import com.typesafe.config.ConfigFactory;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ThreadLocalRandom;
+
+public class Tracing {
+
+    /**
+     * Tracing creates trace contexts and spans for payments and hands finished spans to the
+     * {@link SpanExporter}.
+     *
+     * A trace is started once per payment and its context is carried through the workflow state,
+     * each step and each ComponentClient call, so the spans of one payment share a trace id and
+     * can be assembled into its critical path. Sampling is decided when the trace starts; spans of
+     * an unsampled trace are no-ops and cost nothing beyond the call.
+     *
+     * Configured under payment.tracing in application.conf.
+     *
+     */
+
+    private static final Config config = ConfigFactory.load().getConfig("payment.tracing");
+    private static final double sampleRate = config.getDouble("sample-rate");
+    private static final SpanExporter exporter = SpanExporter.create(config);
+
+    public static TraceContext start() {
+        var random = ThreadLocalRandom.current();
+        return new TraceContext(hex(random.nextLong(), random.nextLong()), hex(random.nextLong()), random.nextDouble() < sampleRate);
+    }
+
+    public static Span span(TraceContext parent, String name) {
+        if (parent == null || !parent.sampled()) return Span.NOOP;
+        return new Span(parent, new TraceContext(parent.traceId(), hex(ThreadLocalRandom.current().nextLong()), true), name, System.currentTimeMillis());
+    }
+
+    /**
+     * Exports a span whose timing is already known, such as the root span of a payment, which
+     * outlives any single call and is recorded from the workflow's start and end times.
+     */
+    public static void record(TraceContext context, String name, long startMillis, long endMillis, Map<String, String> attributes, boolean error) {
+        if (context == null || !context.sampled()) return;
+        exporter.export(new SpanData(context.traceId(), context.spanId(), "", name, startMillis, endMillis, attributes, error));
+    }
+
+    private static String hex(long... parts) {
+        var out = new StringBuilder(parts.length * 16);
+        for (long part : parts) {
+            var digits = Long.toHexString(part);
+            out.append("0".repeat(16 - digits.length())).append(digits);
+        }
+        return out.toString();
+    }
+
+    public record TraceContext(String traceId, String spanId, boolean sampled) {
+
+        public static final TraceContext NONE = new TraceContext("", "", false);
+
+    }
+
+    public static final class Span {
+
+        static final Span NOOP = new Span(TraceContext.NONE, TraceContext.NONE, "", 0L);
+
+        private final TraceContext parent;
+        private final TraceContext context;
+        private final String name;
+        private final long started;
+        private final Map<String, String> attributes;
+
+        private Span(TraceContext parent, TraceContext context, String name, long started) {
+            this.parent = parent;
+            this.context = context;
+            this.name = name;
+            this.started = started;
+            this.attributes = context.sampled() ? new LinkedHashMap<>() : Map.of();
+        }
+
+        public TraceContext context() {
+            return context;
+        }
+
+        public Span attribute(String key, String value) {
+            if (context.sampled()) attributes.put(key, value);
+            return this;
+        }
+
+        /**
+         * Ends the span when the given call completes, marking it as an error if the call failed.
+         */
+        public <T> CompletionStage<T> finish(CompletionStage<T> call) {
+            if (!context.sampled()) return call;
+            return call.whenComplete((__, ex) -> end(ex));
+        }
+
+        public void end(Throwable error) {
+            if (!context.sampled()) return;
+            if (error != null) attributes.put("exception.message", String.valueOf(error.getMessage()));
+            exporter.export(new SpanData(
+                context.traceId(),
+                context.spanId(),
+                parent.spanId(),
+                name,
+                started,
+                System.currentTimeMillis(),
+                attributes,
+                error != null
+            ));
+        }
+
+    }
+
+    public record SpanData(
+        String traceId,
+        String spanId,
+        String parentSpanId,
+        String name,
+        long startMillis,
+        long endMillis,
+        Map<String, String> attributes,
+        boolean error) {}
+
+}
@@ -0,0 +1,197 @@
+package com.example.util;
+
+import com.typesafe.config.Config;
+import com.typesafe.config.ConfigFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+public class TxLog {
+
+    /**
+     * TxLog is a transaction-scoped logging facade.
+     *
+     * In sampled mode, events are not formatted or written when they are logged. They are kept,
+     * with their unformatted arguments, in a small buffer per txId, and when the transaction
+     * completes the buffer is either written out or dropped:
+     * - failed transactions are always written
+     * - transactions slower than the slow threshold are always written
+     * - successful transactions are written at the configured sample rate
+     *
+     * Logging an event takes no lock: buffers are kept in a concurrent map, and each buffer is
+     * a list of its events, at most max-events-per-transaction, extended by compare-and-set.
+     * Transactions that never complete are written when their buffer goes stale, since a stuck
+     * payment is the most interesting kind. Stale buffers are looked for in the background at
+     * most once a second, and past max-buffered-transactions the oldest buffers are dropped
+     * there, down to nine tenths of it, counted as evicted. In full mode every event is logged
+     * immediately.
+     *
+     * Configured under payment.logging in application.conf.
+     *
+     */
+
+    private static final Config config = ConfigFactory.load().getConfig("payment.logging");
+    private static final boolean sampled = config.getString("mode").equals("sampled");
+    private static final double successSampleRate = config.getDouble("success-sample-rate");
+    private static final long slowThresholdMillis = config.getDuration("slow-threshold").toMillis();
+    private static final int maxEventsPerTx = config.getInt("max-events-per-transaction");
+    private static final int maxBufferedTx = config.getInt("max-buffered-transactions");
+    private static final long staleAfterMillis = config.getDuration("stale-after").toMillis();
+
+    private static final long SWEEP_INTERVAL_MILLIS = 1_000;
+
+    private static final Map<String, Buffer> buffers = new ConcurrentHashMap<>();
+    private static final AtomicBoolean sweeping = new AtomicBoolean();
+    private static volatile long nextSweep;
+
+    private static final LongAdder written = Metrics.counter(
+        "payment_log_transactions_total", "Transactions whose buffered log events were written or dropped.", "decision", "written");
+    private static final LongAdder dropped = Metrics.counter(
+        "payment_log_transactions_total", "Transactions whose buffered log events were written or dropped.", "decision", "dropped");
+    private static final LongAdder evicted = Metrics.counter(
+        "payment_log_transactions_total", "Transactions whose buffered log events were written or dropped.", "decision", "evicted");
+
+    private final Logger log;
+
+    private TxLog(Logger log) {
+        this.log = log;
+    }
+
+    public static TxLog getLogger(Class<?> type) {
+        return new TxLog(LoggerFactory.getLogger(type));
+    }
+
+    public void info(String txId, String format, Object arg) {
+        if (!sampled) {
+            log.info(format, arg);
+        } else if (log.isInfoEnabled()) {
+            buffer(txId).add(new Event(log, false, format, arg, null));
+        }
+    }
+
+    public void info(String txId, String format, Object arg1, Object arg2) {
+        if (!sampled) {
+            log.info(format, arg1, arg2);
+        } else if (log.isInfoEnabled()) {
+            buffer(txId).add(new Event(log, false, format, arg1, arg2));
+        }
+    }
+
+    public void warn(String txId, String format, Object arg) {
+        if (!sampled) {
+            log.warn(format, arg);
+        } else {
+            buffer(txId).add(new Event(log, true, format, arg, null));
+        }
+    }
+
+    /**
+     * Decides whether the events buffered for a transaction are written, and releases the buffer.
+     */
+    public static void complete(String txId, boolean failed, long durationMillis) {
+        if (!sampled) return;
+        var buffer = buffers.remove(txId);
+        if (buffer == null) return;
+        var interesting = failed
+            || durationMillis >= slowThresholdMillis
+            || ThreadLocalRandom.current().nextDouble() < successSampleRate;
+        if (interesting) {
+            buffer.write(txId, failed ? "failed" : durationMillis >= slowThresholdMillis ? "slow" : "sampled");
+            written.increment();
+        } else {
+            dropped.increment();
+        }
+    }
+
+    private static Buffer buffer(String txId) {
+        var buffer = buffers.get(txId);
+        if (buffer != null) return buffer;
+        var now = System.currentTimeMillis();
+        buffer = buffers.computeIfAbsent(txId, __ -> new Buffer(now));
+        if ((now >= nextSweep || buffers.size() > maxBufferedTx) && sweeping.compareAndSet(false, true)) {
+            // off the caller's thread, so writing stale buffers does not hold up its transaction
+            CompletableFuture.runAsync(() -> sweep(now));
+        }
+        return buffer;
+    }
+
+    private static void sweep(long now) {
+        try {
+            nextSweep = now + SWEEP_INTERVAL_MILLIS;
+            buffers.forEach((txId, buffer) -> {
+                if (now - buffer.created > staleAfterMillis && buffers.remove(txId, buffer)) {
+                    buffer.write(txId, "incomplete");
+                    written.increment();
+                }
+            });
+            var excess = buffers.size() - maxBufferedTx * 9L / 10;
+            if (buffers.size() <= maxBufferedTx || excess <= 0) return;
+            buffers.entrySet().stream()
+                .sorted(Comparator.comparingLong(entry -> entry.getValue().created))
+                .limit(excess)
+                .toList()
+                .forEach(entry -> {
+                    if (buffers.remove(entry.getKey(), entry.getValue())) evicted.increment();
+                });
+        } finally {
+            sweeping.set(false);
+        }
+        // buffers opened while this sweep ran did not start one of their own
+        if (buffers.size() > maxBufferedTx && sweeping.compareAndSet(false, true)) sweep(System.currentTimeMillis());
+    }
+
+    private static final class Buffer {
+
+        private final long created;
+        private final AtomicReference<Node> last = new AtomicReference<>();
+        private final AtomicInteger overflow = new AtomicInteger();
+
+        private Buffer(long created) {
+            this.created = created;
+        }
+
+        void add(Event event) {
+            while (true) {
+                var current = last.get();
+                var count = current == null ? 0 : current.count();
+                if (count >= maxEventsPerTx) {
+                    overflow.incrementAndGet();
+                    return;
+                }
+                if (last.compareAndSet(current, new Node(event, current, count + 1))) return;
+            }
+        }
+
+        void write(String txId, String reason) {
+            var events = new ArrayList<Event>();
+            for (var node = last.get(); node != null; node = node.previous()) events.add(node.event());
+            for (Event event : events.reversed()) event.write();
+            if (overflow.get() > 0 && !events.isEmpty()) {
+                events.getFirst().log().info("Transaction [{}] log written ({}), {} events dropped from buffer.", txId, reason, overflow.get());
+            }
+        }
+
+    }
+
+    private record Node(Event event, Node previous, int count) {}
+
+    private record Event(Logger log, boolean warn, String format, Object arg1, Object arg2) {
+
+        void write() {
+            if (warn) log.warn(format, arg1, arg2);
+            else log.info(format, arg1, arg2);
+        }
+
+    }
+
+}
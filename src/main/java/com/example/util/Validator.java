@@ -10,6 +10,7 @@ import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionStage;
 import java.util.function.BiFunction;
 import java.util.function.Function;
+import java.util.function.Supplier;
 
 public class Validator {
 
@@ -109,7 +110,7 @@ public class Validator {
                 );
             }
 
-            // Handle async service validations based on mode
+            // Handle async service validations based on mode; a service call that fails fails the result
             return processServiceValidationsAsync(results)
                 .thenApply(finalResults ->
                     func.apply(
@@ -236,11 +237,6 @@ public class Validator {
                         return CompletableFuture.completedFuture(results);
                     }
                     return processSequentially(results, nextValidations);
-                })
-                .exceptionally(ex -> {
-                    log.error("Service validation failed", ex);
-                    results.add("Service validation failed: " + ex.getMessage());
-                    return results;
                 });
         }
 
@@ -249,10 +245,6 @@ public class Validator {
                 .map(validation ->
                     validation.resultAsync()
                         .thenApply(failed -> failed ? validation.message() : null)
-                        .exceptionally(ex -> {
-                            log.error("Service validation failed", ex);
-                            return "Service validation failed: " + ex.getMessage();
-                        })
                 )
                 .toList();
 
@@ -459,6 +451,44 @@ public class Validator {
 
     }
 
+    public record AsyncServiceValidation(Supplier<? extends CompletionStage<?>> call, String reason) implements ServiceValidation {
+
+        @Override
+        public CompletionStage<Boolean> resultAsync() {
+            return call.get()
+                .handle((result, ex) -> {
+                    if (ex != null) {
+                        log.error("Service validation failed: {}", ex.getMessage());
+                        return true; //true, there is an error
+                    }
+                    return result == null; //a null result means the expected result wasn't met
+                });
+        }
+
+        @Override
+        public String message() {
+            return reason;
+        }
+
+    }
+
+    public record AsyncServiceVerification(Supplier<? extends CompletionStage<Boolean>> call, String reason) implements ServiceValidation {
+
+        // a failed call, such as a timeout or an open circuit breaker, is not an answer: it fails
+        // the validation instead of rejecting it, so the caller's retries and failover apply
+        @Override
+        public CompletionStage<Boolean> resultAsync() {
+            return call.get()
+                .thenApply(result -> !result.booleanValue()); //result == true here means verification passed
+        }
+
+        @Override
+        public String message() {
+            return reason;
+        }
+
+    }
+
     public static ServiceValidation entityExists(ComponentMethodRef<?> method, String reason){
         return new BooleanServiceValidation(method, reason);
     }
@@ -467,6 +497,14 @@ public class Validator {
         return new BooleanServiceVerification<>(method, p1, reason);
     }
 
+    public static ServiceValidation entityExists(Supplier<? extends CompletionStage<?>> call, String reason){
+        return new AsyncServiceValidation(call, reason);
+    }
+
+    public static ServiceValidation verify(Supplier<? extends CompletionStage<Boolean>> call, String reason){
+        return new AsyncServiceVerification(call, reason);
+    }
+
     public enum Mode {
         FAIL_FAST,     //Execute validations until first failure
         PASSIVE        //Execute all validations, accumulate results